@@ -0,0 +1,124 @@
+/*************************************************************************
+ *  Compilation:  javac ConcurrentOrderedSTBenchmark.java
+ *  Execution:    java ConcurrentOrderedSTBenchmark [keys] [millis] [reads%]
+ *  Dependencies: ConcurrentSkipListST.java RedBlackBST.java StdOut.java
+ *
+ *  Multi-threaded throughput of ConcurrentSkipListST against a
+ *  RedBlackBST behind a single lock, for 1 to 64 threads.
+ *
+ *  Each table starts empty; every thread then runs random operations on
+ *  keys 0 to keys-1 for the given number of milliseconds: reads% of them
+ *  are get(), floor() or ceiling(), the rest split evenly between put()
+ *  and delete(). The first run of each table is a JIT warm-up and is not
+ *  reported. Defaults: 100000 keys, 1000 ms, 90% reads.
+ *
+ *  On one core threads can only take turns, so the numbers show what
+ *  the lock-free table costs without contention; the speedup needs as
+ *  many cores as threads.
+ *
+ *  % java ConcurrentOrderedSTBenchmark 100000 500 90     (on one core)
+ *  threads     synchronized     concurrent   speedup
+ *        1           891817         431576     0.48x
+ *        4          2079310         857429     0.41x
+ *       64          1731190         831706     0.48x
+ *
+ *************************************************************************/
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class ConcurrentOrderedSTBenchmark {
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+    // the operations a benchmarked table supports
+    private interface Table {
+        Integer get(Integer key);
+        Integer floor(Integer key);
+        Integer ceiling(Integer key);
+        void put(Integer key, Integer val);
+        void delete(Integer key);
+    }
+
+    // RedBlackBST with every operation under one lock
+    private static class SynchronizedTable implements Table {
+        private final RedBlackBST<Integer, Integer> st = new RedBlackBST<Integer, Integer>();
+        public synchronized Integer get(Integer key)          { return st.get(key);     }
+        public synchronized Integer floor(Integer key)        { return st.floor(key);   }
+        public synchronized Integer ceiling(Integer key)      { return st.ceiling(key); }
+        public synchronized void put(Integer key, Integer val) { st.put(key, val);       }
+
+        // RedBlackBST.delete() reports a missing key on System.err
+        public synchronized void delete(Integer key)          { if (st.contains(key)) st.delete(key); }
+    }
+
+    private static class ConcurrentTable implements Table {
+        private final ConcurrentSkipListST<Integer, Integer> st = new ConcurrentSkipListST<Integer, Integer>();
+        public Integer get(Integer key)          { return st.get(key);     }
+        public Integer floor(Integer key)        { return st.floor(key);   }
+        public Integer ceiling(Integer key)      { return st.ceiling(key); }
+        public void put(Integer key, Integer val) { st.put(key, val);       }
+        public void delete(Integer key)          { st.delete(key);         }
+    }
+
+    // run threads threads against table for millis ms; return operations per second
+    private static double run(final Table table, int threads, final int keys,
+                              final long millis, final int readPercent) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done  = new CountDownLatch(threads);
+        final long[] ops = new long[threads];
+        final long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(id);
+                    long n = 0;
+                    try {
+                        start.await();
+                        while ((n & 1023) != 0 || System.nanoTime() < deadline[0]) {
+                            Integer key = random.nextInt(keys);
+                            int op = random.nextInt(100);
+                            if      (op < readPercent / 3)                     table.floor(key);
+                            else if (op < 2 * readPercent / 3)                 table.ceiling(key);
+                            else if (op < readPercent)                         table.get(key);
+                            else if (op < readPercent + (100 - readPercent)/2) table.put(key, id);
+                            else                                               table.delete(key);
+                            n++;
+                        }
+                    }
+                    catch (InterruptedException e) { }
+                    ops[id] = n;
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        deadline[0] = System.nanoTime() + millis * 1000000L;
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long total = 0;
+        for (long n : ops) total += n;
+        return total / seconds;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int keys        = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long millis     = args.length > 1 ? Long.parseLong(args[1])   : 1000;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+
+        // warm up both tables
+        run(new SynchronizedTable(), 4, keys, millis, readPercent);
+        run(new ConcurrentTable(),   4, keys, millis, readPercent);
+
+        StdOut.printf("%7s %16s %14s %9s\n", "threads", "synchronized", "concurrent", "speedup");
+        for (int threads : THREADS) {
+            double locked     = run(new SynchronizedTable(), threads, keys, millis, readPercent);
+            double concurrent = run(new ConcurrentTable(),   threads, keys, millis, readPercent);
+            StdOut.printf("%7d %16.0f %14.0f %8.2fx\n", threads, locked, concurrent, concurrent / locked);
+        }
+    }
+}
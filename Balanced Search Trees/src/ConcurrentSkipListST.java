@@ -0,0 +1,380 @@
+/*************************************************************************
+ *  Compilation:  javac ConcurrentSkipListST.java
+ *  Execution:    java ConcurrentSkipListST < input.txt
+ *  Dependencies: StdIn.java StdOut.java Queue.java
+ *  Data files:   http://algs4.cs.princeton.edu/33balanced/tinyST.txt
+ *
+ *  A thread-safe ordered symbol table implemented with a lock-free skip
+ *  list (Herlihy and Shavit, The Art of Multiprocessor Programming, 14.4).
+ *
+ *  A RedBlackBST cannot be shared without one big lock: put() and
+ *  delete() rotate and recolor nodes and rewrite the subtree counts all
+ *  the way up to the root. In a skip list an update only changes the
+ *  links next to its own node, so threads working on different keys do
+ *  not get in each other's way.
+ *
+ *  - Each node is on the bottom list and, with probability 1/2^i, on the
+ *    lists of levels 1 to i above it, which let a search skip ahead.
+ *  - A link is an AtomicMarkableReference: a link plus a mark bit saying
+ *    that the node it leaves from is deleted. put() links a new node in
+ *    with compareAndSet(), bottom level first; delete() marks the links
+ *    of the node, top level first, and any thread that walks past a
+ *    marked node unlinks it. Nobody ever waits for a lock.
+ *  - The value of a node changes by compareAndSet() too, and a deleted
+ *    node's value is null: delete() takes effect when it sets the value
+ *    to null, and a put() of the same key that sees null helps finish the
+ *    delete and then inserts a new node, so neither update is lost.
+ *
+ *  get(), contains(), floor(), ceiling(), min() and max() take O(log N)
+ *  expected time. The subtree counts that make rank() and select()
+ *  logarithmic in a tree are exactly what makes it unshareable, so here
+ *  they walk the bottom list, O(N) at worst; so do size(lo, hi) and
+ *  keys(). Walks are weakly consistent: they reflect some, but not
+ *  necessarily all, of the updates made while they run. (SnapshotST
+ *  answers rank() and select() consistently against one version, for
+ *  a few writers.)
+ *
+ *  % java ConcurrentSkipListST < tinyST.txt
+ *  A 8
+ *  C 4
+ *  E 12
+ *  H 5
+ *  L 11
+ *  M 9
+ *  P 10
+ *  R 3
+ *  S 0
+ *  X 7
+ *
+ *************************************************************************/
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrentSkipListST<Key extends Comparable<Key>, Value> {
+    private static final int LEVELS = 32;            // number of lists, bottom one included
+
+    private final Node<Key, Value> head = new Node<Key, Value>(null, null, LEVELS);
+    private final LongAdder count = new LongAdder(); // number of keys
+
+    // skip list node: the key and the number of levels never change
+    private static class Node<Key, Value> {
+        private final Key key;
+        private volatile Object val;                 // null once the node is deleted
+        private final AtomicMarkableReference<Node<Key, Value>>[] next;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Node(Key key, Object val, int levels) {
+            this.key = key;
+            this.val = val;
+            this.next = (AtomicMarkableReference<Node<Key, Value>>[]) new AtomicMarkableReference[levels];
+            for (int i = 0; i < levels; i++)
+                next[i] = new AtomicMarkableReference<Node<Key, Value>>(null, false);
+        }
+
+        private Node<Key, Value> next(int level) {
+            return next[level].getReference();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Node, Object> VAL =
+        AtomicReferenceFieldUpdater.newUpdater(Node.class, Object.class, "val");
+
+    // number of levels of a new node: i+1 with probability 1/2^(i+1)
+    private static int randomLevels() {
+        int r = ThreadLocalRandom.current().nextInt();
+        return Math.min(LEVELS, Integer.numberOfTrailingZeros(r) + 1);
+    }
+
+
+   /***********************************************************************
+    *  Search, unlinking marked nodes on the way
+    ***********************************************************************/
+
+    // fill preds[i] and succs[i] with the last node < key and the first node
+    // >= key on level i, unlinking every marked node found between them;
+    // return whether succs[0] has the key
+    private boolean find(Key key, Node<Key, Value>[] preds, Node<Key, Value>[] succs) {
+        boolean[] marked = { false };
+        retry:
+        while (true) {
+            Node<Key, Value> pred = head, curr = null;
+            for (int level = LEVELS - 1; level >= 0; level--) {
+                curr = pred.next(level);
+                while (curr != null) {
+                    Node<Key, Value> succ = curr.next[level].get(marked);
+                    if (marked[0]) {
+                        // curr is deleted: unlink it, or start over if pred changed
+                        if (!pred.next[level].compareAndSet(curr, succ, false, false)) continue retry;
+                        curr = succ;
+                    }
+                    else if (curr.key.compareTo(key) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    }
+                    else break;
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return curr != null && curr.key.compareTo(key) == 0;
+        }
+    }
+
+    // mark every link out of x, top level first; harmless to repeat
+    private void mark(Node<Key, Value> x) {
+        boolean[] marked = { false };
+        for (int level = x.next.length - 1; level >= 0; level--) {
+            Node<Key, Value> succ = x.next[level].get(marked);
+            while (!marked[0]) {
+                x.next[level].attemptMark(succ, true);
+                succ = x.next[level].get(marked);
+            }
+        }
+    }
+
+    // the first node >= key on the bottom level, or null. Like find(), but
+    // it steps over marked nodes instead of unlinking them, so it never
+    // writes and never starts over; the node may be deleted (null value).
+    private Node<Key, Value> ceilingNode(Key key) {
+        boolean[] marked = { false };
+        Node<Key, Value> pred = head, curr = null;
+        for (int level = LEVELS - 1; level >= 0; level--) {
+            curr = pred.next(level);
+            while (curr != null) {
+                Node<Key, Value> succ = curr.next[level].get(marked);
+                if (marked[0])                          curr = succ;
+                else if (curr.key.compareTo(key) < 0) { pred = curr; curr = succ; }
+                else break;
+            }
+        }
+        return curr;
+    }
+
+    // the last node < key on the bottom level (<= key if inclusive; the
+    // last node if key is null), or head if there is none; as ceilingNode()
+    private Node<Key, Value> floorNode(Key key, boolean inclusive) {
+        boolean[] marked = { false };
+        Node<Key, Value> pred = head;
+        for (int level = LEVELS - 1; level >= 0; level--) {
+            Node<Key, Value> curr = pred.next(level);
+            while (curr != null) {
+                Node<Key, Value> succ = curr.next[level].get(marked);
+                if (marked[0]) {
+                    curr = succ;
+                    continue;
+                }
+                if (key != null) {
+                    int cmp = curr.key.compareTo(key);
+                    if (cmp > 0 || (cmp == 0 && !inclusive)) break;
+                }
+                pred = curr;
+                curr = succ;
+            }
+        }
+        return pred;
+    }
+
+
+   /***********************************************************************
+    *  Size and search
+    ***********************************************************************/
+
+    // number of key-value pairs in the table
+    public int size() {
+        return (int) Math.max(0, count.sum());
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // is the key in the symbol table?
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    // value associated with the key, null if no such key; never writes
+    @SuppressWarnings("unchecked")
+    public Value get(Key key) {
+        if (key == null) throw new NullPointerException("called get() with null key");
+        Node<Key, Value> x = ceilingNode(key);
+        if (x == null || x.key.compareTo(key) != 0) return null;
+        return (Value) x.val;
+    }
+
+
+   /***********************************************************************
+    *  Insertion and deletion
+    ***********************************************************************/
+
+    // insert the key-value pair, overwriting the old value if the key is
+    // already present; a null value deletes the key
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void put(Key key, Value val) {
+        if (key == null) throw new NullPointerException("called put() with null key");
+        if (val == null) { delete(key); return; }
+
+        Node<Key, Value>[] preds = (Node<Key, Value>[]) new Node[LEVELS];
+        Node<Key, Value>[] succs = (Node<Key, Value>[]) new Node[LEVELS];
+        int levels = randomLevels();
+        while (true) {
+            if (find(key, preds, succs)) {
+                Node<Key, Value> x = succs[0];
+                Object old = x.val;
+                if (old != null && VAL.compareAndSet(x, old, val)) return;
+
+                // x is being deleted: finish the job, then insert a new node
+                if (old == null) mark(x);
+                continue;
+            }
+
+            // link in at the bottom level: now the key is in the table
+            Node<Key, Value> x = new Node<Key, Value>(key, val, levels);
+            for (int level = 0; level < levels; level++)
+                x.next[level].set(succs[level], false);
+            if (!preds[0].next[0].compareAndSet(succs[0], x, false, false)) continue;
+            count.increment();
+
+            // then on the levels above, unless x is deleted in the meantime
+            for (int level = 1; level < levels; level++) {
+                while (true) {
+                    Node<Key, Value> succ = succs[level];
+                    Node<Key, Value> old = x.next[level].getReference();
+                    if (old != succ && !x.next[level].compareAndSet(old, succ, false, false)) return;
+                    if (preds[level].next[level].compareAndSet(succ, x, false, false)) break;
+                    find(key, preds, succs);
+                }
+            }
+            return;
+        }
+    }
+
+    // delete the key and its value, if the key is in the table
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void delete(Key key) {
+        if (key == null) throw new NullPointerException("called delete() with null key");
+
+        Node<Key, Value>[] preds = (Node<Key, Value>[]) new Node[LEVELS];
+        Node<Key, Value>[] succs = (Node<Key, Value>[]) new Node[LEVELS];
+        while (true) {
+            if (!find(key, preds, succs)) return;
+            Node<Key, Value> x = succs[0];
+            Object old = x.val;
+            if (old != null && !VAL.compareAndSet(x, old, null)) continue;
+
+            // deleted now (by this thread, or by one that has not yet marked x)
+            if (old != null) count.decrement();
+            mark(x);
+            find(key, preds, succs);
+            return;
+        }
+    }
+
+
+   /***********************************************************************
+    *  Ordered symbol table methods
+    ***********************************************************************/
+
+    // smallest key, null if the table is empty
+    public Key min() {
+        for (Node<Key, Value> x = head.next(0); x != null; x = x.next(0))
+            if (x.val != null) return x.key;
+        return null;
+    }
+
+    // largest key, null if the table is empty
+    public Key max() {
+        Node<Key, Value> x = floorNode(null, true);
+        if (x == head)      return null;
+        if (x.val != null)  return x.key;
+        return lower(x.key);
+    }
+
+    // largest key <= key
+    public Key floor(Key key) {
+        if (key == null) throw new NullPointerException("called floor() with null key");
+        Node<Key, Value> x = floorNode(key, true);
+        if (x == head)      return null;
+        if (x.val != null)  return x.key;
+        return lower(x.key);
+    }
+
+    // largest key < key: search again below a deleted node until a live one
+    private Key lower(Key key) {
+        while (true) {
+            Node<Key, Value> x = floorNode(key, false);
+            if (x == head)     return null;
+            if (x.val != null) return x.key;
+            key = x.key;
+        }
+    }
+
+    // smallest key >= key
+    public Key ceiling(Key key) {
+        if (key == null) throw new NullPointerException("called ceiling() with null key");
+        for (Node<Key, Value> x = ceilingNode(key); x != null; x = x.next(0))
+            if (x.val != null) return x.key;
+        return null;
+    }
+
+    // number of keys less than key; walks them all
+    public int rank(Key key) {
+        if (key == null) throw new NullPointerException("called rank() with null key");
+        int r = 0;
+        for (Node<Key, Value> x = head.next(0); x != null && x.key.compareTo(key) < 0; x = x.next(0))
+            if (x.val != null) r++;
+        return r;
+    }
+
+    // key of rank k, null if there is none; walks the k smaller keys
+    public Key select(int k) {
+        if (k < 0) return null;
+        for (Node<Key, Value> x = head.next(0); x != null; x = x.next(0))
+            if (x.val != null && k-- == 0) return x.key;
+        return null;
+    }
+
+    // number of keys in [lo, hi]
+    public int size(Key lo, Key hi) {
+        int n = 0;
+        for (Key key : keys(lo, hi)) n++;
+        return n;
+    }
+
+    // all of the keys, in ascending order (weakly consistent)
+    public Iterable<Key> keys() {
+        Queue<Key> queue = new Queue<Key>();
+        for (Node<Key, Value> x = head.next(0); x != null; x = x.next(0))
+            if (x.val != null) queue.enqueue(x.key);
+        return queue;
+    }
+
+    // the keys in [lo, hi], in ascending order (weakly consistent)
+    public Iterable<Key> keys(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("called keys() with null lo");
+        if (hi == null) throw new NullPointerException("called keys() with null hi");
+        Queue<Key> queue = new Queue<Key>();
+        for (Node<Key, Value> x = ceilingNode(lo); x != null && x.key.compareTo(hi) <= 0; x = x.next(0))
+            if (x.val != null) queue.enqueue(x.key);
+        return queue;
+    }
+
+
+   /***********************************************************************
+    *  Unit test client.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        ConcurrentSkipListST<String, Integer> st = new ConcurrentSkipListST<String, Integer>();
+        for (int i = 0; !StdIn.isEmpty(); i++) {
+            String key = StdIn.readString();
+            st.put(key, i);
+        }
+        for (String s : st.keys())
+            StdOut.println(s + " " + st.get(s));
+    }
+}
@@ -0,0 +1,661 @@
+/*************************************************************************
+ *  Compilation:  javac DurableST.java
+ *  Execution:    java DurableST dir n threads
+ *  Dependencies: RedBlackBST.java Queue.java StdOut.java
+ *
+ *  An ordered symbol table that survives a restart: a RedBlackBST in
+ *  memory, a write-ahead log of every put() and delete(), and now and
+ *  then a checkpoint of the whole table, all in one directory.
+ *
+ *  A change is applied to the tree and appended to an in-memory buffer
+ *  of log records; put() and delete() return once it is on disk. The
+ *  first writer to find its record not yet on disk writes the whole
+ *  buffer to the log with one write() and one force(), for itself and
+ *  for every writer that appended while the previous force() ran (group
+ *  commit), so under load a batch of changes costs one sequential append
+ *  and one disk flush. putAll() sends a batch of its own the same way.
+ *  Readers may see a change a moment before it is durable. Once a write
+ *  to the log fails, every later change, commit and checkpoint throws
+ *  instead: the records of the failed batch may be lost or torn, and
+ *  nothing written after them could be trusted. Reopening the directory
+ *  recovers what reached the disk.
+ *
+ *  Each log record is its length, a CRC32 and the change. Recovery
+ *  replays records until the first one that is cut short, claims more
+ *  bytes than the file has left, or fails its CRC (the tail of a write a
+ *  crash interrupted) and truncates the log there; such a change was
+ *  never acknowledged.
+ *
+ *  checkpoint() switches to a new log file, copies the pairs out of the
+ *  tree in order, and writes them through a FileChannel to a new file
+ *  that is forced and then renamed over the old checkpoint, so the
+ *  directory always holds one complete checkpoint; the logs it covers
+ *  are then deleted. The directory itself is forced after the new log
+ *  is created and after the rename, before any log is deleted, so a
+ *  crash cannot keep the deletes but lose the files that replace them.
+ *  Writers are blocked for the last flush of the old log and the
+ *  in-memory copy; the checkpoint file is written without locks.
+ *  A checkpoint also starts by itself whenever the log grows past a
+ *  given size. Reopening reads the checkpoint into a tree in linear time
+ *  with RedBlackBST.fromSorted() (no compares, no rotations) and replays
+ *  only the log written since: a restart costs a sequential read of the
+ *  table instead of N put()s.
+ *
+ *  Directory layout:
+ *
+ *      checkpoint        magic, generation g, N, the N pairs in order, CRC32
+ *      wal-<g>, ...      the logs of generation g and later
+ *
+ *  The test client writes n pairs in batches of 1000, takes a checkpoint,
+ *  writes n/10 more from the given number of threads one put() at a time,
+ *  then reopens the directory, and compares with n put()s into a tree.
+ *
+ *  % java DurableST /tmp/durable 1000000 8
+ *  write 1000000 pairs in batches of 1000:   4164 ms,   1000 forces
+ *  checkpoint:                                 956 ms
+ *  put 100000 pairs from 8 threads:          4740 ms,  50838 forces
+ *  reopen: checkpoint + 100000 log records:   1561 ms, 999878 keys
+ *  rebuild with 1000000 put()s:               2269 ms
+ *
+ *************************************************************************/
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class DurableST<Key extends Comparable<Key>, Value> implements Closeable {
+    private static final long MAGIC = 0x4455524142535431L;   // "DURABST1", first in a checkpoint
+    private static final byte PUT = 1, DELETE = 2;            // first byte of a log record
+    private static final int HEADER = 8;                      // length and CRC32 of a log record
+    private static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String LOG = "wal-";
+
+    // how to write keys or values to a file and read them back
+    public interface Codec<T> {
+        void write(DataOutput out, T x) throws IOException;
+        T read(DataInput in) throws IOException;
+
+        Codec<Integer> INTEGER = new Codec<Integer>() {
+            public void write(DataOutput out, Integer x) throws IOException { out.writeInt(x); }
+            public Integer read(DataInput in) throws IOException           { return in.readInt(); }
+        };
+        Codec<Long> LONG = new Codec<Long>() {
+            public void write(DataOutput out, Long x) throws IOException { out.writeLong(x); }
+            public Long read(DataInput in) throws IOException           { return in.readLong(); }
+        };
+        Codec<Double> DOUBLE = new Codec<Double>() {
+            public void write(DataOutput out, Double x) throws IOException { out.writeDouble(x); }
+            public Double read(DataInput in) throws IOException           { return in.readDouble(); }
+        };
+        Codec<String> STRING = new Codec<String>() {
+            public void write(DataOutput out, String x) throws IOException { out.writeUTF(x); }
+            public String read(DataInput in) throws IOException           { return in.readUTF(); }
+        };
+    }
+
+    private final Path dir;
+    private final Codec<Key> keyCodec;
+    private final Codec<Value> valCodec;
+    private final long checkpointBytes;   // start a checkpoint when the log grows past this
+
+    // guarded by this
+    private RedBlackBST<Key, Value> st;
+    private long generation;              // the log being appended to is wal-<generation>
+    private FileChannel log;
+    private long logBytes;                // bytes in the log, written or pending
+    private Buffer pending = new Buffer();    // records not yet written
+    private long appended;                // number of records appended so far
+    private boolean checkpointing;        // is a checkpoint under way?
+    private final Buffer record = new Buffer();   // scratch space for one record
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    // guarded by flushLock, which is taken before this, never after
+    private final Object flushLock = new Object();
+    private Buffer spare = new Buffer();  // swapped with pending by flush()
+    private long durable;                 // number of records on disk
+    private long forces;                  // number of force()s of the log
+
+    // the first failure to write the log; once set, no change is accepted
+    // and none is acknowledged, so durable never passes a record that did
+    // not reach the disk, and a torn record can only be the last one
+    private volatile IOException failure;
+
+    // a byte array output stream that lets us at its bytes without a copy
+    private static class Buffer extends ByteArrayOutputStream {
+        public byte[] array() { return buf; }
+    }
+
+    private final Object checkpointLock = new Object();   // one checkpoint at a time
+
+    // open the table in the given directory (creating it if need be),
+    // recovering it from the checkpoint and the log
+    public DurableST(String dir, Codec<Key> keyCodec, Codec<Value> valCodec) throws IOException {
+        this(dir, keyCodec, valCodec, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    // as above, taking a checkpoint whenever the log grows past checkpointBytes
+    public DurableST(String dir, Codec<Key> keyCodec, Codec<Value> valCodec, long checkpointBytes) throws IOException {
+        if (checkpointBytes <= 0) throw new IllegalArgumentException("checkpoint size must be positive: " + checkpointBytes);
+        this.dir = Paths.get(dir);
+        this.keyCodec = keyCodec;
+        this.valCodec = valCodec;
+        this.checkpointBytes = checkpointBytes;
+        Files.createDirectories(this.dir);
+        recover();
+    }
+
+   /*************************************************************************
+    *  Recovery
+    *************************************************************************/
+
+    // load the checkpoint, replay the logs written since, and open the last
+    // one for appending
+    private void recover() throws IOException {
+        Path cp = dir.resolve(CHECKPOINT);
+        long from = 0;
+        if (Files.exists(cp)) from = readCheckpoint(cp);
+        else                  st = new RedBlackBST<Key, Value>();
+
+        List<Long> gens = new ArrayList<Long>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, LOG + "*")) {
+            for (Path file : files) {
+                long g = Long.parseLong(file.getFileName().toString().substring(LOG.length()));
+                if (g < from) Files.delete(file);      // left over from before the checkpoint
+                else          gens.add(g);
+            }
+        }
+        catch (NumberFormatException e) {
+            throw new IOException(dir + ": stray log file", e);
+        }
+        Collections.sort(gens);
+
+        generation = from;
+        for (int i = 0; i < gens.size(); i++) {
+            generation = gens.get(i);
+            long good = replay(logFile(generation));
+            boolean last = i == gens.size() - 1;
+            if (good < Files.size(logFile(generation))) {
+                if (!last) throw new IOException(logFile(generation) + ": corrupt record at byte " + good);
+                try (FileChannel ch = FileChannel.open(logFile(generation), StandardOpenOption.WRITE)) {
+                    ch.truncate(good);
+                    ch.force(true);
+                }
+            }
+        }
+        log = FileChannel.open(logFile(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        syncDirectory();
+        logBytes = log.size();
+        log.position(logBytes);
+    }
+
+    // read the checkpoint into st; return the generation of the first log after it
+    private long readCheckpoint(Path cp) throws IOException {
+        try (FileChannel ch = FileChannel.open(cp, StandardOpenOption.READ)) {
+            CRC32 sum = new CRC32();
+            DataInputStream in = new DataInputStream(new ChannelInput(ch, sum, ch.size() - 8));
+            if (in.readLong() != MAGIC) throw new IOException(cp + ": not a checkpoint");
+            long g = in.readLong();
+            int n = in.readInt();
+            // every pair takes at least a byte: don't trust a larger count
+            if (n < 0 || n > ch.size()) throw new IOException(cp + ": corrupt checkpoint (" + n + " pairs)");
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Key[] keys = (Key[]) new Comparable[n];
+            @SuppressWarnings("unchecked")
+            Value[] vals = (Value[]) new Object[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = keyCodec.read(in);
+                vals[i] = valCodec.read(in);
+            }
+            if (in.readLong() != sum.getValue()) throw new IOException(cp + ": checksum does not match");
+            st = RedBlackBST.fromSorted(keys, vals);
+            return g;
+        }
+        catch (EOFException | IllegalArgumentException e) {
+            throw new IOException(cp + ": corrupt checkpoint", e);
+        }
+    }
+
+    // apply the records of a log to st, up to the first bad one; return the
+    // number of bytes of good records. A length is not trusted until the CRC
+    // is checked, so one longer than what is left of the file marks a torn
+    // or corrupt record too (instead of a huge allocation).
+    private long replay(Path file) throws IOException {
+        long good = 0;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = ch.size();
+            DataInputStream in = new DataInputStream(new ChannelInput(ch, null, 0));
+            byte[] buf = new byte[64];
+            while (true) {
+                int length, sum;
+                try {
+                    length = in.readInt();
+                    sum = in.readInt();
+                    if (length <= 0 || length > size - good - HEADER) return good;
+                    if (length > buf.length) buf = new byte[Math.max(length, 2*buf.length)];
+                    in.readFully(buf, 0, length);
+                }
+                catch (EOFException e) {
+                    return good;
+                }
+                crc.reset();
+                crc.update(buf, 0, length);
+                if ((int) crc.getValue() != sum) return good;
+                apply(new DataInputStream(new ByteArrayInputStream(buf, 0, length)));
+                good += HEADER + length;
+            }
+        }
+    }
+
+    // apply one log record to st
+    private void apply(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        Key key = keyCodec.read(in);
+        if      (op == PUT)    st.put(key, valCodec.read(in));
+        else if (op == DELETE) { if (st.contains(key)) st.delete(key); }
+        else throw new IOException("unknown log record " + op);
+    }
+
+    private Path logFile(long g) {
+        return dir.resolve(LOG + g);
+    }
+
+    // an input stream over a file channel, read in big blocks, feeding a
+    // CRC32 (if any) with the bytes before byte limit a block at a time.
+    // Unlike a BufferedInputStream it takes no lock for each byte, which
+    // is most of the cost of reading a checkpoint with DataInputStream.
+    private static class ChannelInput extends InputStream {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        private final CRC32 crc;
+        private final long limit;
+        private long at;              // position in the file of the end of buf
+
+        public ChannelInput(FileChannel ch, CRC32 crc, long limit) {
+            this.ch = ch;
+            this.crc = crc;
+            this.limit = limit;
+            buf.limit(0);
+        }
+
+        public int read() throws IOException {
+            if (!buf.hasRemaining() && !fill()) return -1;
+            return buf.get() & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!buf.hasRemaining() && !fill()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        // read the next block; false at the end of the file
+        private boolean fill() throws IOException {
+            buf.clear();
+            int n = ch.read(buf);
+            buf.flip();
+            if (n <= 0) return false;
+            if (crc != null && at < limit) crc.update(buf.array(), 0, (int) Math.min(n, limit - at));
+            at += n;
+            return true;
+        }
+    }
+
+   /*************************************************************************
+    *  Writing: apply, append to the log, wait for group commit
+    *************************************************************************/
+
+    // insert the key-value pair, overwriting the old value; returns once the
+    // change is on disk
+    public void put(Key key, Value val) {
+        if (key == null) throw new NullPointerException("key is null in put()");
+        if (val == null) throw new NullPointerException("value is null in put()");
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            append(PUT, key, val);
+            st.put(key, val);
+            seq = appended;
+        }
+        commit(seq);
+    }
+
+    // delete the key (and its value), if present; returns once the change is on disk
+    public void delete(Key key) {
+        if (key == null) throw new NullPointerException("key is null in delete()");
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            if (!st.contains(key)) return;
+            append(DELETE, key, null);
+            st.delete(key);
+            seq = appended;
+        }
+        commit(seq);
+    }
+
+    // insert the pairs keys[i], vals[i] in order, with one write to the log;
+    // returns once all of them are on disk
+    public void putAll(Key[] keys, Value[] vals) {
+        if (keys.length != vals.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + " != " + vals.length);
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] == null || vals[i] == null) throw new NullPointerException("null key or value at index " + i);
+        long seq;
+        synchronized (this) {
+            checkFailure();
+            for (int i = 0; i < keys.length; i++) {
+                append(PUT, keys[i], vals[i]);
+                st.put(keys[i], vals[i]);
+            }
+            seq = appended;
+        }
+        commit(seq);
+    }
+
+    // add the record of a change to the pending buffer
+    private void append(byte op, Key key, Value val) {
+        try {
+            record.reset();
+            recordOut.writeByte(op);
+            keyCodec.write(recordOut, key);
+            if (op == PUT) valCodec.write(recordOut, val);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("could not encode " + key, e);
+        }
+        int length = record.size();
+        crc.reset();
+        crc.update(record.array(), 0, length);
+        int sum = (int) crc.getValue();
+        for (int shift = 24; shift >= 0; shift -= 8) pending.write(length >>> shift);
+        for (int shift = 24; shift >= 0; shift -= 8) pending.write(sum >>> shift);
+        pending.write(record.array(), 0, length);
+        logBytes += HEADER + length;
+        appended++;
+    }
+
+    // return once the first seq records are on disk: write and force
+    // everything pending, unless a writer that went first already did
+    private void commit(long seq) {
+        synchronized (flushLock) {
+            checkFailure();
+            if (durable < seq) flush();
+        }
+        boolean start = false;
+        synchronized (this) {
+            if (logBytes > checkpointBytes && !checkpointing) start = checkpointing = true;
+        }
+        if (start) {
+            try {
+                checkpoint();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("could not write checkpoint in " + dir, e);
+            }
+        }
+    }
+
+    // write the pending records to the log and force it; flushLock held.
+    // Writers go on appending to the other buffer in the meantime.
+    private void flush() {
+        Buffer batch;
+        long upto;
+        FileChannel ch;
+        synchronized (this) {
+            batch = pending;
+            pending = spare;
+            spare = batch;
+            upto = appended;
+            ch = log;
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(batch.array(), 0, batch.size());
+            while (bytes.hasRemaining()) ch.write(bytes);
+            ch.force(false);
+        }
+        catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException("could not write log " + logFile(generation), e);
+        }
+        batch.reset();
+        forces++;
+        durable = upto;
+    }
+
+    // throw if a write to the log has failed: the records of that batch may
+    // be lost or torn, so no later change can be made durable behind them
+    private void checkFailure() {
+        if (failure != null)
+            throw new UncheckedIOException("an earlier write to the log in " + dir + " failed; reopen to recover", failure);
+    }
+
+   /*************************************************************************
+    *  Checkpoints
+    *************************************************************************/
+
+    // write all the pairs to a new checkpoint and delete the logs it makes
+    // redundant; writers wait only while the pairs are copied
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            try {
+                Key[] keys;
+                Value[] vals;
+                long g;
+                synchronized (this) {
+                    checkFailure();
+                    g = generation + 1;
+                }
+
+                // create the new log, and make its directory entry durable,
+                // before any write to it can be acknowledged
+                FileChannel next = FileChannel.open(logFile(g), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                boolean switched = false;
+                try {
+                    syncDirectory();
+                    synchronized (flushLock) {
+                        synchronized (this) {
+                            // everything so far goes into the old log and the
+                            // checkpoint; everything after, into the new log
+                            checkFailure();
+                            flush();
+                            try {
+                                log.close();
+                            }
+                            catch (IOException e) {
+                                failure = e;
+                                throw e;
+                            }
+                            log = next;
+                            switched = true;
+                            generation = g;
+                            logBytes = 0;
+
+                            int n = st.size();
+                            @SuppressWarnings({"unchecked", "rawtypes"})
+                            Key[] ks = (Key[]) new Comparable[n];
+                            @SuppressWarnings("unchecked")
+                            Value[] vs = (Value[]) new Object[n];
+                            RedBlackBST<Key, Value>.Cursor cursor = st.cursor();
+                            for (int i = 0; i < n; i++) {
+                                ks[i] = cursor.next();
+                                vs[i] = cursor.value();
+                            }
+                            keys = ks;
+                            vals = vs;
+                        }
+                    }
+                }
+                finally {
+                    if (!switched) {
+                        // the old log stays; the next checkpoint makes wal-<g> again
+                        next.close();
+                        Files.deleteIfExists(logFile(g));
+                    }
+                }
+
+                // the logs may go once the rename that makes them redundant is durable
+                writeCheckpoint(keys, vals, g);
+                syncDirectory();
+                for (long old = g - 1; Files.deleteIfExists(logFile(old)); old--) { }
+            }
+            finally {
+                synchronized (this) {
+                    checkpointing = false;
+                }
+            }
+        }
+    }
+
+    // write the pairs to checkpoint.tmp, force it, and rename it over the checkpoint
+    private void writeCheckpoint(Key[] keys, Value[] vals, long g) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeLong(MAGIC);
+            out.writeLong(g);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                keyCodec.write(out, keys[i]);
+                valCodec.write(out, vals[i]);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // force the directory itself: force() on a file does not make its name
+    // durable, so files created or renamed in dir could vanish in a crash.
+    // Opening a directory this way works on Linux and the BSDs (not Windows).
+    private void syncDirectory() throws IOException {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        }
+    }
+
+    // write what is pending to the log and close it (no checkpoint); after
+    // a failed write, just close it and report the failure
+    public void close() throws IOException {
+        synchronized (flushLock) {
+            try {
+                if (failure != null) throw new IOException("an earlier write to the log in " + dir + " failed", failure);
+                flush();
+            }
+            finally {
+                synchronized (this) {
+                    log.close();
+                }
+            }
+        }
+    }
+
+   /*************************************************************************
+    *  Reading: the ordered symbol table methods of RedBlackBST
+    *************************************************************************/
+
+    public synchronized int size()                       { return st.size();          }
+    public synchronized boolean isEmpty()                { return st.isEmpty();       }
+    public synchronized Value get(Key key)               { return st.get(key);        }
+    public synchronized boolean contains(Key key)        { return st.contains(key);   }
+    public synchronized Key min()                        { return st.min();           }
+    public synchronized Key max()                        { return st.max();           }
+    public synchronized Key floor(Key key)               { return st.floor(key);      }
+    public synchronized Key ceiling(Key key)             { return st.ceiling(key);    }
+    public synchronized Key select(int k)                { return st.select(k);       }
+    public synchronized int rank(Key key)                { return st.rank(key);       }
+    public synchronized int size(Key lo, Key hi)         { return st.size(lo, hi);    }
+    public synchronized Iterable<Key> keys(Key lo, Key hi) { return st.keys(lo, hi);  }
+    public synchronized Iterable<Key> keys()             { return st.keys();          }
+
+
+   /*************************************************************************
+    *  Test client
+    *************************************************************************/
+    public static void main(String[] args) throws Exception {
+        String dir = args[0];
+        int n = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        Random random = new Random(42);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) keys[i] = random.nextInt();
+
+        // start from an empty directory
+        if (Files.exists(Paths.get(dir)))
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(dir))) {
+                for (Path file : files) Files.delete(file);
+            }
+
+        DurableST<Integer, Integer> st = new DurableST<Integer, Integer>(dir, Codec.INTEGER, Codec.INTEGER, Long.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < n; i += 1000) {
+            int m = Math.min(1000, n - i);
+            Integer[] ks = new Integer[m];
+            System.arraycopy(keys, i, ks, 0, m);
+            st.putAll(ks, ks);
+        }
+        StdOut.printf("write %d pairs in batches of 1000: %6d ms, %6d forces\n", n, System.currentTimeMillis() - start, st.forces);
+
+        start = System.currentTimeMillis();
+        st.checkpoint();
+        StdOut.printf("checkpoint:                              %6d ms\n", System.currentTimeMillis() - start);
+
+        // n/10 single put()s from several threads: their records share forces
+        long forces = st.forces;
+        start = System.currentTimeMillis();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int from = t;
+            workers[t] = new Thread(() -> {
+                for (int i = from; i < n/10; i += threads) st.put(keys[i], -keys[i]);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        StdOut.printf("put %d pairs from %d threads:        %6d ms, %6d forces\n", n/10, threads,
+                      System.currentTimeMillis() - start, st.forces - forces);
+        int size = st.size();
+        st.close();
+
+        start = System.currentTimeMillis();
+        DurableST<Integer, Integer> reopened = new DurableST<Integer, Integer>(dir, Codec.INTEGER, Codec.INTEGER);
+        StdOut.printf("reopen: checkpoint + %d log records: %6d ms, %d keys\n", n/10, System.currentTimeMillis() - start, reopened.size());
+        if (reopened.size() != size || reopened.get(keys[0]) != -keys[0]) throw new IllegalStateException("recovery lost changes");
+        reopened.close();
+
+        start = System.currentTimeMillis();
+        RedBlackBST<Integer, Integer> rb = new RedBlackBST<Integer, Integer>();
+        for (Integer key : keys) rb.put(key, key);
+        StdOut.printf("rebuild with %d put()s:             %6d ms\n", n, System.currentTimeMillis() - start);
+    }
+}
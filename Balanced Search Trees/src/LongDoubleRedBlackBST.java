@@ -0,0 +1,716 @@
+/*************************************************************************
+ *  Compilation:  javac LongDoubleRedBlackBST.java
+ *  Execution:    java LongDoubleRedBlackBST n
+ *  Dependencies: RedBlackBST.java Queue.java StdOut.java
+ *
+ *  An ordered symbol table with long keys and double values implemented
+ *  using a left-leaning red-black BST (the 2-3 version, as RedBlackBST)
+ *  whose nodes live in parallel arrays instead of Node objects.
+ *
+ *  Node x is keys[x], vals[x] and the four ints nodes[4x..4x+3]: its left
+ *  link, right link, subtree count and color. Links are array indices,
+ *  and index 0 is the null link NIL: its count is 0 and it is black, so
+ *  size() and isRed() need no null check. There are no Long or Double
+ *  wrappers either, so a pair costs 8 + 8 + 16 bytes instead of a Node,
+ *  a Long and a Double (about 40 + 16 + 16 bytes). The garbage collector
+ *  sees three arrays whatever the number of keys, and save() writes the
+ *  table to a file by writing the arrays as they are; load() reads them
+ *  back with nothing to re-insert.
+ *
+ *  The links, count and color of a node share 16 bytes, a quarter of a
+ *  cache line: a rotation or a color check on a child costs one miss,
+ *  not one per array. (With separate left[], right[] and size[] arrays
+ *  and the colors in a bitset, delete() was about 40% slower than this:
+ *  every check of a child or grandchild went to several arrays.)
+ *
+ *  delete() puts the freed node on a free list, threaded through left(),
+ *  and put() takes nodes from there before growing the arrays. The
+ *  arrays double when full and never shrink.
+ *
+ *  The test client puts n random keys into a RedBlackBST<Long, Double>
+ *  and into a LongDoubleRedBlackBST, gets them all, and deletes half of
+ *  them (bytes per key include the Long and Double objects).
+ *
+ *  % java LongDoubleRedBlackBST 2000000
+ *  RedBlackBST<Long, Double>  put 3738 ns, get 2424 ns, delete 4810 ns per key,  88 bytes per key
+ *  LongDoubleRedBlackBST      put 1942 ns, get 1480 ns, delete 4845 ns per key,  35 bytes per key
+ *
+ *************************************************************************/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class LongDoubleRedBlackBST {
+
+    private static final boolean RED   = true;
+    private static final boolean BLACK = false;
+    private static final int NIL = 0;            // the null link
+    private static final int INIT_CAPACITY = 16;
+    private static final int MAX_NODES = (Integer.MAX_VALUE - 8) / 4;    // nodes.length must fit in an int
+    private static final long MAGIC = 0x4c44524242535431L;   // "LDRBBST1", first in a saved file
+
+    private long[] keys;       // keys[x] = key of node x
+    private double[] vals;     // vals[x] = value of node x
+    private int[] nodes;       // left link, right link, count and color of node x at 4x..4x+3;
+                               // the left link of a free node is the next free node
+
+    private int root = NIL;    // root of the BST
+    private int next = 1;      // nodes next.. have never been used
+    private int free = NIL;    // first node on the free list
+
+    private final int[] path = new int[64];   // nodes on the search path of put()
+
+    // create an empty symbol table
+    public LongDoubleRedBlackBST() {
+        this(INIT_CAPACITY);
+    }
+
+    // create an empty symbol table with room for capacity keys before it grows
+    public LongDoubleRedBlackBST(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity is negative: " + capacity);
+        if (capacity > MAX_NODES - 1) throw new IllegalArgumentException("capacity too large: " + capacity);
+        allocate(capacity + 1);
+    }
+
+    // a table made of arrays read back by load()
+    private LongDoubleRedBlackBST(long[] keys, double[] vals, int[] nodes, int root, int next, int free) {
+        this.keys = keys;
+        this.vals = vals;
+        this.nodes = nodes;
+        this.root = root;
+        this.next = next;
+        this.free = free;
+    }
+
+    // make room for nodes 0..n-1, keeping the nodes already there
+    private void allocate(int n) {
+        keys  = keys  == null ? new long[n]   : Arrays.copyOf(keys, n);
+        vals  = vals  == null ? new double[n] : Arrays.copyOf(vals, n);
+        nodes = nodes == null ? new int[4*n]  : Arrays.copyOf(nodes, 4*n);
+    }
+
+    // a red node holding the key-value pair: off the free list, or a new one
+    private int newNode(long key, double val) {
+        int x = free;
+        if (x != NIL) free = left(x);
+        else {
+            if (next == keys.length) {
+                if (next == MAX_NODES) throw new IllegalStateException("symbol table full");
+                allocate((int) Math.min(2L * next, MAX_NODES));
+            }
+            x = next++;
+        }
+        keys[x] = key;
+        vals[x] = val;
+        setLeft(x, NIL);
+        setRight(x, NIL);
+        setSize(x, 1);
+        setColor(x, RED);
+        return x;
+    }
+
+    // put node x, no longer in the tree, on the free list
+    private void freeNode(int x) {
+        setLeft(x, free);
+        setRight(x, NIL);
+        setSize(x, 0);
+        free = x;
+    }
+
+   /*************************************************************************
+    *  Node helper methods
+    *************************************************************************/
+
+    private int left(int x)  { return nodes[4*x];     }
+    private int right(int x) { return nodes[4*x + 1]; }
+    private int size(int x)  { return nodes[4*x + 2]; }    // 0 if x is NIL
+
+    private void setLeft(int x, int y)  { nodes[4*x]     = y; }
+    private void setRight(int x, int y) { nodes[4*x + 1] = y; }
+    private void setSize(int x, int n)  { nodes[4*x + 2] = n; }
+
+    // is node x red; false if x is NIL
+    private boolean isRed(int x) {
+        return nodes[4*x + 3] != 0;
+    }
+
+    private void setColor(int x, boolean color) {
+        nodes[4*x + 3] = color ? 1 : 0;
+    }
+
+    private void flipColor(int x) {
+        nodes[4*x + 3] ^= 1;
+    }
+
+   /*************************************************************************
+    *  Size methods
+    *************************************************************************/
+
+    // return number of key-value pairs in this symbol table
+    public int size() { return size(root); }
+
+    // is this symbol table empty?
+    public boolean isEmpty() {
+        return root == NIL;
+    }
+
+   /*************************************************************************
+    *  Standard BST search
+    *************************************************************************/
+
+    // the node with the given key; NIL if no such key
+    private int find(long key) {
+        int x = root;
+        while (x != NIL) {
+            if      (key < keys[x]) x = left(x);
+            else if (key > keys[x]) x = right(x);
+            else                    return x;
+        }
+        return NIL;
+    }
+
+    // value associated with the given key
+    public double get(long key) {
+        int x = find(key);
+        if (x == NIL) throw new NoSuchElementException("symbol table does not contain " + key);
+        return vals[x];
+    }
+
+    // value associated with the given key, or defaultValue if no such key
+    public double getOrDefault(long key, double defaultValue) {
+        int x = find(key);
+        return x == NIL ? defaultValue : vals[x];
+    }
+
+    // is there a key-value pair with the given key?
+    public boolean contains(long key) {
+        return find(key) != NIL;
+    }
+
+   /*************************************************************************
+    *  Red-black insertion
+    *************************************************************************/
+
+    // insert the key-value pair; overwrite the old value with the new value
+    // if the key is already present
+    public void put(long key, double val) {
+        if (root == NIL) {
+            root = newNode(key, val);
+            setColor(root, BLACK);
+            return;
+        }
+
+        // find the key, or the null link to hang it from, remembering the path
+        // (as in RedBlackBST.put())
+        int d = 0;
+        long dirs = 0;                     // bit i set: the path goes right from path[i]
+        for (int x = root; x != NIL; d++) {
+            if (key == keys[x]) { vals[x] = val; return; }
+            path[d] = x;
+            if (key < keys[x]) x = left(x);
+            else             { dirs |= 1L << d; x = right(x); }
+        }
+
+        // hang a red node there and walk back up, fixing up only as far as needed
+        int h = newNode(key, val);
+        boolean fixing = true;
+        for (int i = d-1; i >= 0; i--) {
+            int p = path[i];
+            if ((dirs >>> i & 1) == 0) setLeft(p, h);
+            else                       setRight(p, h);
+            setSize(p, size(p) + 1);
+            h = p;
+            if (!fixing) continue;
+            if (isRed(right(h)) && !isRed(left(h)))       h = rotateLeft(h);
+            if (isRed(left(h))  &&  isRed(left(left(h)))) h = rotateRight(h);
+            boolean flip = isRed(left(h)) && isRed(right(h));
+            if (flip) flipColors(h);
+            fixing = flip || (isRed(h) && isRed(left(h)));
+        }
+        root = h;
+        setColor(root, BLACK);
+        assert check();
+    }
+
+/*************************************************************************
+    *  Red-black deletion
+    *************************************************************************/
+
+    // delete the key-value pair with the minimum key
+    public void deleteMin() {
+        if (isEmpty()) throw new NoSuchElementException("BST underflow");
+
+        // if both children of root are black, set root to red
+        if (!isRed(left(root)) && !isRed(right(root)))
+            setColor(root, RED);
+
+        root = deleteMin(root);
+        if (!isEmpty()) setColor(root, BLACK);
+        assert check();
+    }
+
+    // delete the key-value pair with the minimum key rooted at h
+    private int deleteMin(int h) {
+        if (left(h) == NIL) {
+            freeNode(h);
+            return NIL;
+        }
+
+        if (!isRed(left(h)) && !isRed(left(left(h))))
+            h = moveRedLeft(h);
+
+        setLeft(h, deleteMin(left(h)));
+        return shrink(h);
+    }
+
+    // delete the key-value pair with the maximum key
+    public void deleteMax() {
+        if (isEmpty()) throw new NoSuchElementException("BST underflow");
+
+        // if both children of root are black, set root to red
+        if (!isRed(left(root)) && !isRed(right(root)))
+            setColor(root, RED);
+
+        root = deleteMax(root);
+        if (!isEmpty()) setColor(root, BLACK);
+        assert check();
+    }
+
+    // delete the key-value pair with the maximum key rooted at h
+    private int deleteMax(int h) {
+        if (isRed(left(h)))
+            h = rotateRight(h);
+
+        if (right(h) == NIL) {
+            freeNode(h);
+            return NIL;
+        }
+
+        if (!isRed(right(h)) && !isRed(left(right(h))))
+            h = moveRedRight(h);
+
+        setRight(h, deleteMax(right(h)));
+        return shrink(h);
+    }
+
+    // delete the key-value pair with the given key, if present
+    public void delete(long key) {
+        if (!contains(key)) return;
+
+        // if both children of root are black, set root to red
+        if (!isRed(left(root)) && !isRed(right(root)))
+            setColor(root, RED);
+
+        root = delete(root, key);
+        if (!isEmpty()) setColor(root, BLACK);
+        assert check();
+    }
+
+    // delete the key-value pair with the given key rooted at h
+    private int delete(int h, long key) {
+        if (key < keys[h]) {
+            if (!isRed(left(h)) && !isRed(left(left(h))))
+                h = moveRedLeft(h);
+            setLeft(h, delete(left(h), key));
+        }
+        else {
+            if (isRed(left(h)))
+                h = rotateRight(h);
+            if (key == keys[h] && right(h) == NIL) {
+                freeNode(h);
+                return NIL;
+            }
+            if (!isRed(right(h)) && !isRed(left(right(h))))
+                h = moveRedRight(h);
+            if (key == keys[h]) {
+                int x = min(right(h));
+                keys[h] = keys[x];
+                vals[h] = vals[x];
+                setRight(h, deleteMin(right(h)));
+            }
+            else setRight(h, delete(right(h), key));
+        }
+        return shrink(h);
+    }
+
+   /*************************************************************************
+    *  red-black tree helper functions
+    *************************************************************************/
+
+    // make a left-leaning link lean to the right
+    private int rotateRight(int h) {
+        assert (h != NIL) && isRed(left(h));
+        int x = left(h);
+        setLeft(h, right(x));
+        setRight(x, h);
+        setColor(x, isRed(h));
+        setColor(h, RED);
+        setSize(x, size(h));
+        setSize(h, size(left(h)) + size(right(h)) + 1);
+        return x;
+    }
+
+    // make a right-leaning link lean to the left
+    private int rotateLeft(int h) {
+        assert (h != NIL) && isRed(right(h));
+        int x = right(h);
+        setRight(h, left(x));
+        setLeft(x, h);
+        setColor(x, isRed(h));
+        setColor(h, RED);
+        setSize(x, size(h));
+        setSize(h, size(left(h)) + size(right(h)) + 1);
+        return x;
+    }
+
+    // flip the colors of a node and its two children
+    private void flipColors(int h) {
+        // h must have opposite color of its two children
+        assert (h != NIL) && (left(h) != NIL) && (right(h) != NIL);
+        assert (!isRed(h) &&  isRed(left(h)) &&  isRed(right(h)))
+            || (isRed(h)  && !isRed(left(h)) && !isRed(right(h)));
+        flipColor(h);
+        flipColor(left(h));
+        flipColor(right(h));
+    }
+
+    // Assuming that h is red and both left(h) and left(left(h))
+    // are black, make left(h) or one of its children red.
+    private int moveRedLeft(int h) {
+        assert (h != NIL);
+        assert isRed(h) && !isRed(left(h)) && !isRed(left(left(h)));
+
+        flipColors(h);
+        if (isRed(left(right(h)))) {
+            setRight(h, rotateRight(right(h)));
+            h = rotateLeft(h);
+        }
+        return h;
+    }
+
+    // Assuming that h is red and both right(h) and left(right(h))
+    // are black, make right(h) or one of its children red.
+    private int moveRedRight(int h) {
+        assert (h != NIL);
+        assert isRed(h) && !isRed(right(h)) && !isRed(left(right(h)));
+        flipColors(h);
+        if (isRed(left(left(h)))) {
+            h = rotateRight(h);
+        }
+        return h;
+    }
+
+    // restore red-black tree invariant on the way back up from a deletion,
+    // in which every node on the path lost exactly one key
+    private int shrink(int h) {
+        setSize(h, size(h) - 1);
+        if (isRed(right(h)))                        h = rotateLeft(h);
+        if (isRed(left(h)) && isRed(left(left(h)))) h = rotateRight(h);
+        if (isRed(left(h)) && isRed(right(h)))      flipColors(h);
+        return h;
+    }
+
+   /*************************************************************************
+    *  Utility functions
+    *************************************************************************/
+
+    // height of tree (1-node tree has height 0)
+    public int height() { return height(root); }
+    private int height(int x) {
+        if (x == NIL) return -1;
+        return 1 + Math.max(height(left(x)), height(right(x)));
+    }
+
+    // number of nodes the arrays have room for before they grow
+    public int capacity() {
+        return keys.length - 1;
+    }
+
+   /*************************************************************************
+    *  Ordered symbol table methods.
+    *************************************************************************/
+
+    // the smallest key
+    public long min() {
+        if (isEmpty()) throw new NoSuchElementException("empty symbol table");
+        return keys[min(root)];
+    }
+
+    // the node with the smallest key in the subtree rooted at x
+    private int min(int x) {
+        assert x != NIL;
+        while (left(x) != NIL) x = left(x);
+        return x;
+    }
+
+    // the largest key
+    public long max() {
+        if (isEmpty()) throw new NoSuchElementException("empty symbol table");
+        int x = root;
+        while (right(x) != NIL) x = right(x);
+        return keys[x];
+    }
+
+    // the largest key less than or equal to the given key
+    public long floor(long key) {
+        int t = NIL;
+        for (int x = root; x != NIL; ) {
+            if      (key < keys[x]) x = left(x);
+            else if (key > keys[x]) { t = x; x = right(x); }
+            else                    return key;
+        }
+        if (t == NIL) throw new NoSuchElementException("no key <= " + key);
+        return keys[t];
+    }
+
+    // the smallest key greater than or equal to the given key
+    public long ceiling(long key) {
+        int t = NIL;
+        for (int x = root; x != NIL; ) {
+            if      (key > keys[x]) x = right(x);
+            else if (key < keys[x]) { t = x; x = left(x); }
+            else                    return key;
+        }
+        if (t == NIL) throw new NoSuchElementException("no key >= " + key);
+        return keys[t];
+    }
+
+    // the key of rank k
+    public long select(int k) {
+        if (k < 0 || k >= size()) throw new IllegalArgumentException("rank out of range: " + k);
+        int x = root;
+        while (true) {
+            int t = size(left(x));
+            if      (t > k) x = left(x);
+            else if (t < k) { k -= t+1; x = right(x); }
+            else            return keys[x];
+        }
+    }
+
+    // number of keys less than key
+    public int rank(long key) {
+        int r = 0;
+        for (int x = root; x != NIL; ) {
+            if      (key < keys[x]) x = left(x);
+            else if (key > keys[x]) { r += 1 + size(left(x)); x = right(x); }
+            else                    return r + size(left(x));
+        }
+        return r;
+    }
+
+   /***********************************************************************
+    *  Range count and range search.
+    ***********************************************************************/
+
+    // all of the keys, in ascending order
+    public long[] keys() {
+        long[] a = new long[size()];
+        keys(root, a, 0, Long.MIN_VALUE, Long.MAX_VALUE);
+        return a;
+    }
+
+    // the keys between lo and hi, in ascending order
+    public long[] keys(long lo, long hi) {
+        long[] a = new long[size(lo, hi)];
+        keys(root, a, 0, lo, hi);
+        return a;
+    }
+
+    // put the keys between lo and hi in the subtree rooted at x into a[n..];
+    // return the next unused index
+    private int keys(int x, long[] a, int n, long lo, long hi) {
+        if (x == NIL) return n;
+        if (lo < keys[x]) n = keys(left(x), a, n, lo, hi);
+        if (lo <= keys[x] && hi >= keys[x]) a[n++] = keys[x];
+        if (hi > keys[x]) n = keys(right(x), a, n, lo, hi);
+        return n;
+    }
+
+    // number keys between lo and hi
+    public int size(long lo, long hi) {
+        if (lo > hi) return 0;
+        if (contains(hi)) return rank(hi) - rank(lo) + 1;
+        else              return rank(hi) - rank(lo);
+    }
+
+   /*************************************************************************
+    *  Saving to and loading from a file
+    *************************************************************************/
+
+    // write the table to the given file: the arrays as they are, free list and all
+    public void save(String file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeLong(MAGIC);
+            out.writeInt(root);
+            out.writeInt(next);
+            out.writeInt(free);
+            out.writeObject(keys);
+            out.writeObject(vals);
+            out.writeObject(nodes);
+        }
+    }
+
+    // the table written to the given file by save()
+    public static LongDoubleRedBlackBST load(String file) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readLong() != MAGIC) throw new IOException(file + ": not a saved LongDoubleRedBlackBST");
+            int root = in.readInt();
+            int next = in.readInt();
+            int free = in.readInt();
+            long[] keys = (long[]) in.readObject();
+            double[] vals = (double[]) in.readObject();
+            int[] nodes = (int[]) in.readObject();
+            if (vals.length != keys.length || nodes.length != 4*keys.length || next > keys.length)
+                throw new IOException(file + ": arrays do not match");
+            LongDoubleRedBlackBST st = new LongDoubleRedBlackBST(keys, vals, nodes, root, next, free);
+            assert st.check();
+            return st;
+        }
+        catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(file + ": not a saved LongDoubleRedBlackBST", e);
+        }
+    }
+
+   /*************************************************************************
+    *  Check integrity of red-black BST data structure
+    *************************************************************************/
+    private boolean check() {
+        if (!isBST())            StdOut.println("Not in symmetric order");
+        if (!isSizeConsistent()) StdOut.println("Subtree counts not consistent");
+        if (!isRankConsistent()) StdOut.println("Ranks not consistent");
+        if (!is23())             StdOut.println("Not a 2-3 tree");
+        if (!isBalanced())       StdOut.println("Not balanced");
+        if (!isPoolConsistent()) StdOut.println("Free list not consistent");
+        return isBST() && isSizeConsistent() && isRankConsistent() && is23() && isBalanced() && isPoolConsistent();
+    }
+
+    // does this binary tree satisfy symmetric order?
+    private boolean isBST() {
+        return isBST(root, NIL, NIL);
+    }
+
+    // is the tree rooted at x a BST with all keys strictly between the keys
+    // of nodes min and max (if min or max is NIL, treat as empty constraint)
+    private boolean isBST(int x, int min, int max) {
+        if (x == NIL) return true;
+        if (min != NIL && keys[x] <= keys[min]) return false;
+        if (max != NIL && keys[x] >= keys[max]) return false;
+        return isBST(left(x), min, x) && isBST(right(x), x, max);
+    }
+
+    // are the size fields correct?
+    private boolean isSizeConsistent() { return size(NIL) == 0 && isSizeConsistent(root); }
+    private boolean isSizeConsistent(int x) {
+        if (x == NIL) return true;
+        if (size(x) != size(left(x)) + size(right(x)) + 1) return false;
+        return isSizeConsistent(left(x)) && isSizeConsistent(right(x));
+    }
+
+    // check that ranks are consistent
+    private boolean isRankConsistent() {
+        for (int i = 0; i < size(); i++)
+            if (i != rank(select(i))) return false;
+        for (long key : keys())
+            if (key != select(rank(key))) return false;
+        return true;
+    }
+
+    // Does the tree have no red right links, and at most one (left)
+    // red links in a row on any path?
+    private boolean is23() { return !isRed(NIL) && is23(root); }
+    private boolean is23(int x) {
+        if (x == NIL) return true;
+        if (isRed(right(x))) return false;
+        if (x != root && isRed(x) && isRed(left(x)))
+            return false;
+        return is23(left(x)) && is23(right(x));
+    }
+
+    // do all paths from root to leaf have same number of black edges?
+    private boolean isBalanced() {
+        int black = 0;     // number of black links on path from root to min
+        for (int x = root; x != NIL; x = left(x))
+            if (!isRed(x)) black++;
+        return isBalanced(root, black);
+    }
+
+    // does every path from the root to a leaf have the given number of black links?
+    private boolean isBalanced(int x, int black) {
+        if (x == NIL) return black == 0;
+        if (!isRed(x)) black--;
+        return isBalanced(left(x), black) && isBalanced(right(x), black);
+    }
+
+    // is every node in 1..next-1 either in the tree or on the free list?
+    private boolean isPoolConsistent() {
+        if (left(NIL) != NIL || right(NIL) != NIL) return false;
+        int n = 0;
+        for (int x = free; x != NIL; x = left(x))
+            if (x >= next || size(x) != 0 || ++n > next) return false;
+        return size() + n == next - 1;
+    }
+
+
+   /*****************************************************************************
+    *  Test client
+    *****************************************************************************/
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        Random random = new Random(42);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = random.nextLong();
+
+        for (int round = 0; round < 3; round++) {
+            long before = heapUsed();
+            long start = System.nanoTime();
+            RedBlackBST<Long, Double> rb = new RedBlackBST<Long, Double>();
+            for (int i = 0; i < n; i++) rb.put(keys[i], (double) i);
+            long put = System.nanoTime() - start;
+            long heap = heapUsed() - before;
+            start = System.nanoTime();
+            double sum = 0.0;
+            for (long key : keys) sum += rb.get(key);
+            long get = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < n; i += 2) rb.delete(keys[i]);
+            long delete = System.nanoTime() - start;
+            report("RedBlackBST<Long, Double>", n, put, get, delete, heap);
+            rb = null;
+
+            before = heapUsed();
+            start = System.nanoTime();
+            LongDoubleRedBlackBST st = new LongDoubleRedBlackBST();
+            for (int i = 0; i < n; i++) st.put(keys[i], i);
+            put = System.nanoTime() - start;
+            heap = heapUsed() - before;
+            start = System.nanoTime();
+            for (long key : keys) sum -= st.get(key);
+            get = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < n; i += 2) st.delete(keys[i]);
+            delete = System.nanoTime() - start;
+            report("LongDoubleRedBlackBST", n, put, get, delete, heap);
+            if (sum != 0.0) throw new IllegalStateException("searches disagree");
+        }
+    }
+
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, int n, long put, long get, long delete, long heap) {
+        StdOut.printf("%-26s put %4d ns, get %4d ns, delete %4d ns per key, %3d bytes per key\n",
+                      name, put / n, get / n, delete / (n/2 + n%2), heap / n);
+    }
+}
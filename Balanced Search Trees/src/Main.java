@@ -164,3 +164,68 @@
 // * ---THEOREMS---
 // - The height of a red-black BST with N nodes is no more than 2 log N.
 // - The average length of a path from the root to a node in a red-black BST with N nodes is ~1.00 lg N. 
+
+
+// * ---BULK BUILD FROM SORTED KEYS (fromSorted)---
+// - N put()s of sorted keys: O(N log N) compares plus rotations and color flips
+// - Sorted input is already in-order, so the tree can be built directly in O(N)
+// - A 2-3 tree of black height b holds between 2^b - 1 keys (all 2-nodes) and 3^b - 1 keys (all 3-nodes)
+// - Split the keys into 2 subtrees (a 2-node) or 3 subtrees (a 3-node = black root + red left child) of height b-1
+// - Subtrees are independent -> build big ones in parallel with fork/join
+
+// * ---SPLIT, JOIN AND SET OPERATIONS---
+// - join(L, k, R) with all keys of L < k < all keys of R: walk down the right spine of the taller tree (left spine if R is taller)
+//   to the black subtree as tall as the other tree, hang k there as a red node with both subtrees as children, rebalance going up like put()
+//   -> O(difference in black height) = O(log N)
+// - split(T, k): walk down to k, join the pieces left behind on each side -> O(log N) (the join costs telescope)
+// - union(A, B): split A at the root key of B, union the left halves and the right halves (independent -> fork/join), join with the root
+//   -> O(m log(n/m + 1)) for sizes m <= n, vs O(m log(n + m)) for m put()s; intersection and difference the same way
+
+// * ---RECURSION VS LOOPS IN RedBlackBST---
+// - Recursive put(): every node on the path is rebuilt on the way back up (3 red checks + N from both children), even for an update
+// - Loop put(): remember the path (nodes + 1 bit per level for left/right); update = set the value and stop
+//   - new key: walk back up doing N++, fix up only while there is a red link to rotate or flip, then just N++
+// - Delete: moveRedLeft()/moveRedRight() reshape the whole path on the way down -> fixed up all the way back anyway
+//   - loop too: record the nodes the moveRed passes leave on the way down in the same path array, then walk back up doing N-- instead of size(left) + size(right) + 1
+//   - one loop for delete(key), deleteMin() and deleteMax(): after a key is found, take over its successor's pair and keep going as deleteMin()
+//   - about as fast as the recursion (no early stop: every level may need fixing) -> the gain is no stack depth, not speed
+// - Cursor stack: depth <= 2 lg N < 64 -> one fixed array, no growing; range() re-aims the cursor -> no allocation per scan
+
+// * ---AUGMENTED TREES: RANGE AGGREGATES (RedBlackBST.Monoid)---
+// - N in each node = the count of its subtree -> rank(), select(), size(lo, hi) in O(log N)
+// - Generalize: keep any summary of the subtree that can be combined from the two children + the node itself
+//   - needs an associative combine with an identity (a monoid): sum, min, max, count, ... (order kept -> need not be commutative)
+//   - recompute it wherever N is recomputed: rotations, balance(), on the way back up from put()/delete()
+// - aggregate(lo, hi): find where the searches for lo and hi split, then down each side take whole subtrees -> O(log N) combines, no scan
+// - Interval trees: key = start, value = end, summary = max end -> does some interval starting <= q reach q? aggregate(min, q) >= q
+
+// * ---PRIMITIVE KEYS AND A NODE POOL (LongDoubleRedBlackBST.java)---
+// - RedBlackBST<Long, Double>: a Node + a Long + a Double per pair (~88 bytes with headers and padding), N objects for the GC to trace
+// - Nodes as array slots: node x = keys[x], vals[x], and left/right/count/color in nodes[4x..4x+3]; links are ints, 0 = null
+//   - keep a node's links, count and color together: a child's color is checked all the time, one array -> one cache miss
+// - delete(): freed slot goes on a free list (threaded through the left links), put() reuses it before growing the arrays
+// - Whole table = 3 arrays: nothing for the GC to trace, save()/load() just write/read the arrays
+
+// * ---SURVIVING A RESTART: WRITE-AHEAD LOG + CHECKPOINTS (DurableST.java)---
+// - Rebuilding a tree from the source data on every start = N put()s -> O(N log N) compares, minutes for big tables
+// - Write-ahead log: append every change to a file (sequential writes only), return once it is forced to disk
+//   - group commit: whoever flushes writes everything pending -> one write + one force() for a whole batch of writers
+//   - each record carries a length + CRC32 -> after a crash, replay up to the first torn record and cut the log there
+// - Checkpoint: start a new log, write all pairs in key order to a temp file, force, rename over the old one (atomic), drop old logs
+// - Restart = read the checkpoint (sorted -> fromSorted() builds the tree in O(N)) + replay only the log written since
+
+// * ---B-TREES (SearchTree23.java)---
+// - Generalize the 2-3 tree: nodes with up to M links (order M), every node but the root at least half full -> height ~ log_{M/2} N
+// - B+-tree: pairs only in the leaves, inner nodes only route (separator keys + a count of keys per child for rank/select)
+// - Insert: a full node splits in half and pushes a separator up; the root splitting is the only way the tree grows
+// - Delete: a node that falls below half full borrows from a sibling, else merges with it; the root losing its last-but-one child shrinks the tree
+// - Leaves are linked -> range scans walk arrays, no climbing back up the tree
+// - Few, wide nodes: ~14 bytes/key at M = 64 vs ~40 for a red-black Node, and fewer cache misses per search
+
+// * ---SHARING AN ORDERED TABLE BETWEEN THREADS (ConcurrentSkipListST.java)---
+// - A red-black BST needs one big lock: put()/delete() rotate, recolor and update the counts N all the way up to the root
+// - Skip list: sorted linked list + express lanes (a node is on level i with probability 1/2^i) -> O(log N) expected search
+// - An update only touches the links next to its own node -> lock-free with compareAndSet()
+//   - insert: link the node in at the bottom level first (the key is now in), then the levels above
+//   - delete: set the value to null (the key is now out), mark the node's links, anyone passing by unlinks it
+// - Price: rank()/select() walk the bottom list (keeping counts per node would bring back the contention at the top)
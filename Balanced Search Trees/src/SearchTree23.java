@@ -1,3 +1,37 @@
+/*************************************************************************
+ *  Compilation:  javac SearchTree23.java
+ *  Execution:    java SearchTree23 n [M]
+ *  Dependencies: RedBlackBST.java Queue.java StdOut.java
+ *
+ *  An ordered symbol table implemented with a B+-tree: the 2-3 tree
+ *  described below, with nodes of up to M links instead of 3.
+ *
+ *  Inner nodes hold up to M children, with their separating keys and how
+ *  many keys are below each child (for rank() and select()). The pairs
+ *  are all in the leaves, up to M-1 of them each, and the leaves are
+ *  linked in order both ways: a range scan descends once and then walks
+ *  along arrays, and floor() and ceiling() never back up the tree. Every
+ *  node other than the root is at least half full, so all leaves are at
+ *  depth about log_{M/2} N, and a search is a binary search inside a
+ *  handful of wide nodes instead of a pointer chase through lg N
+ *  separate Node objects.
+ *
+ *  A RedBlackBST spends about 40 bytes per key on its Node (header, key,
+ *  value, two links, color, count); here a key costs two array slots in
+ *  a leaf plus a small share of an inner node. Keys are still references
+ *  to objects, so each compare in a search can miss the cache as well;
+ *  see LongEytzingerST for primitive keys.
+ *
+ *  The test client puts n random Integer keys into a RedBlackBST and into
+ *  a tree of order M (default 64), gets them all, and scans them in order
+ *  (bytes per key leave out the Integer objects themselves).
+ *
+ *  % java SearchTree23 2000000 64
+ *  RedBlackBST       put 2571 ns, get 2052 ns, scan 171 ns per key,  39 bytes per key
+ *  SearchTree23(64)  put 1520 ns, get 1571 ns, scan 108 ns per key,  14 bytes per key
+ *
+ *************************************************************************/
+
 // In a balanced search tree the heights of the left and right sub-trees may have a maximum DIFFERENCE of 1
 // ie a height of 6,7 (left,right) is balanced. A height of 2,4 implies the tree is unbalanced
 
@@ -26,6 +60,730 @@
 // - Insert into a 3-node whose parent is a 2-node
 // - Insert into a 3-node whose parent is a 3-node
 
-public class SearchTree23 {
-    
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class SearchTree23<Key extends Comparable<Key>, Value> {
+    private static final int DEFAULT_ORDER = 64;
+
+    private final int M;           // at most M children per inner node, M-1 keys per leaf
+    private Node root;             // a Leaf while the tree has only one node
+    private int height;            // number of inner levels above the leaves
+
+    // keys[] and the counts are common to both kinds of node
+    private abstract class Node {
+        Object[] keys;             // leaf: its keys; inner: keys[i] <= every key below child i
+        int n;                     // leaf: number of keys; inner: number of children
+        int N;                     // number of keys in the subtree
+    }
+
+    // the pairs, in order, and the links to the neighbouring leaves
+    private class Leaf extends Node {
+        private final Object[] vals = new Object[M];
+        private Leaf prev, next;
+
+        public Leaf() {
+            keys = new Object[M];  // room for one key too many until put() splits the leaf
+        }
+    }
+
+    // links to the children, and the number of keys below each of them
+    private class Inner extends Node {
+        private final Object[] children = new Object[M+1];
+        private final int[] counts = new int[M+1];
+
+        public Inner() {
+            keys = new Object[M+1];
+        }
+    }
+
+    // an empty tree of order 64
+    public SearchTree23() {
+        this(DEFAULT_ORDER);
+    }
+
+    // an empty tree of order M >= 3 (order 3 is a 2-3 tree with the keys in the leaves)
+    public SearchTree23(int M) {
+        if (M < 3) throw new IllegalArgumentException("order must be at least 3: " + M);
+        this.M = M;
+        root = new Leaf();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Key key(Node x, int i) {
+        return (Key) x.keys[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node child(Inner x, int i) {
+        return (Node) x.children[i];
+    }
+
+    // fewest children (inner) or keys (leaf) a node of height h other than the root has
+    private int minimum(int h) {
+        if (h == 0) return (M - 1) / 2;
+        else        return (M + 1) / 2;
+    }
+
+
+   /*************************************************************************
+    *  Searching inside a node
+    *************************************************************************/
+
+    // index of key in leaf x, or -(insertion point) - 1 if it is not there
+    private int search(Leaf x, Key key) {
+        int lo = 0, hi = x.n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo(key(x, mid));
+            if      (cmp < 0) hi = mid - 1;
+            else if (cmp > 0) lo = mid + 1;
+            else              return mid;
+        }
+        return -(lo + 1);
+    }
+
+    // index of the child of x whose subtree would hold key: the last i >= 1
+    // with keys[i] <= key, or 0 if there is none
+    private int search(Inner x, Key key) {
+        int lo = 1, hi = x.n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareTo(key(x, mid)) < 0) hi = mid - 1;
+            else                                lo = mid + 1;
+        }
+        return hi;
+    }
+
+    // the leaf whose key range holds key
+    private Leaf leaf(Key key) {
+        Node x = root;
+        for (int h = height; h > 0; h--) {
+            Inner in = (Inner) x;
+            x = child(in, search(in, key));
+        }
+        return (Leaf) x;
+    }
+
+
+   /*************************************************************************
+    *  Size and search
+    *************************************************************************/
+
+    // number of key-value pairs in the table
+    public int size() {
+        return root.N;
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // does the table contain the given key?
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    // value associated with the given key, or null if no such key
+    @SuppressWarnings("unchecked")
+    public Value get(Key key) {
+        Leaf x = leaf(key);
+        int i = search(x, key);
+        if (i < 0) return null;
+        return (Value) x.vals[i];
+    }
+
+    // height of the tree (a tree of one leaf has height 0)
+    public int height() {
+        return height;
+    }
+
+    // order of the tree: the most children an inner node has
+    public int order() {
+        return M;
+    }
+
+
+   /*************************************************************************
+    *  Insertion
+    *************************************************************************/
+
+    // insert the key-value pair, overwriting the old value if the key is
+    // already present; a null value deletes the key
+    public void put(Key key, Value val) {
+        if (key == null) throw new NullPointerException("key is null in put()");
+        if (val == null) { delete(key); return; }
+        Node right = put(root, height, key, val);
+
+        // the root split: grow a new root above the two halves
+        if (right != null) {
+            Inner x = new Inner();
+            x.children[0] = root;
+            x.counts[0] = root.N;
+            x.keys[0] = root.keys[0];
+            x.children[1] = right;
+            x.counts[1] = right.N;
+            x.keys[1] = right.keys[0];
+            x.n = 2;
+            x.N = root.N + right.N;
+            root = x;
+            height++;
+        }
+        assert check();
+    }
+
+    // put the pair in the subtree x of height h; if x overflows, split it
+    // and return its new right sibling, else null
+    private Node put(Node x, int h, Key key, Value val) {
+        if (h == 0) {
+            Leaf leaf = (Leaf) x;
+            int i = search(leaf, key);
+            if (i >= 0) {
+                leaf.vals[i] = val;
+                return null;
+            }
+            i = -i - 1;
+            System.arraycopy(leaf.keys, i, leaf.keys, i+1, leaf.n - i);
+            System.arraycopy(leaf.vals, i, leaf.vals, i+1, leaf.n - i);
+            leaf.keys[i] = key;
+            leaf.vals[i] = val;
+            leaf.N = ++leaf.n;
+            if (leaf.n < M) return null;
+            return split(leaf);
+        }
+
+        Inner in = (Inner) x;
+        int i = search(in, key);
+        Node c = child(in, i);
+        Node right = put(c, h-1, key, val);
+        in.N += c.N - in.counts[i];
+        in.counts[i] = c.N;
+        if (right == null) return null;
+
+        // hang the new sibling of c next to it
+        int j = i + 1;
+        System.arraycopy(in.children, j, in.children, j+1, in.n - j);
+        System.arraycopy(in.counts,   j, in.counts,   j+1, in.n - j);
+        System.arraycopy(in.keys,     j, in.keys,     j+1, in.n - j);
+        in.children[j] = right;
+        in.counts[j] = right.N;
+        in.keys[j] = right.keys[0];
+        in.N += right.N;
+        in.n++;
+        if (in.n <= M) return null;
+        return split(in);
+    }
+
+    // move the upper half of the full leaf x to a new leaf, and return it
+    private Leaf split(Leaf x) {
+        Leaf y = new Leaf();
+        int k = x.n / 2;
+        y.n = x.n - k;
+        System.arraycopy(x.keys, k, y.keys, 0, y.n);
+        System.arraycopy(x.vals, k, y.vals, 0, y.n);
+        for (int i = k; i < x.n; i++) {
+            x.keys[i] = null;
+            x.vals[i] = null;
+        }
+        x.n = x.N = k;
+        y.N = y.n;
+
+        y.next = x.next;
+        if (y.next != null) y.next.prev = y;
+        y.prev = x;
+        x.next = y;
+        return y;
+    }
+
+    // move the upper half of the children of the full inner node x to a new
+    // node, and return it; its keys[0] is the key that separates the two
+    private Inner split(Inner x) {
+        Inner y = new Inner();
+        int k = (x.n + 1) / 2;
+        y.n = x.n - k;
+        System.arraycopy(x.children, k, y.children, 0, y.n);
+        System.arraycopy(x.counts,   k, y.counts,   0, y.n);
+        System.arraycopy(x.keys,     k, y.keys,     0, y.n);
+        for (int i = k; i < x.n; i++) {
+            y.N += x.counts[i];
+            x.children[i] = null;
+            x.keys[i] = null;
+        }
+        x.n = k;
+        x.N -= y.N;
+        return y;
+    }
+
+
+   /*************************************************************************
+    *  Deletion
+    *************************************************************************/
+
+    // delete the key and its value, if the key is in the table
+    public void delete(Key key) {
+        if (key == null) throw new NullPointerException("key is null in delete()");
+        if (!delete(root, height, key)) return;
+
+        // the root is left with one child: it goes, and the tree gets shorter
+        if (height > 0 && root.n == 1) {
+            root = child((Inner) root, 0);
+            height--;
+        }
+        assert check();
+    }
+
+    public void deleteMin() {
+        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow");
+        delete(min());
+    }
+
+    public void deleteMax() {
+        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow");
+        delete(max());
+    }
+
+    // delete the key from the subtree x of height h; return false if it was
+    // not there. A child left with too few keys or children borrows one from
+    // a sibling, or else is merged with it.
+    private boolean delete(Node x, int h, Key key) {
+        if (h == 0) {
+            Leaf leaf = (Leaf) x;
+            int i = search(leaf, key);
+            if (i < 0) return false;
+            System.arraycopy(leaf.keys, i+1, leaf.keys, i, leaf.n - i - 1);
+            System.arraycopy(leaf.vals, i+1, leaf.vals, i, leaf.n - i - 1);
+            leaf.N = --leaf.n;
+            leaf.keys[leaf.n] = null;
+            leaf.vals[leaf.n] = null;
+            return true;
+        }
+
+        Inner in = (Inner) x;
+        int i = search(in, key);
+        Node c = child(in, i);
+        if (!delete(c, h-1, key)) return false;
+        in.counts[i]--;
+        in.N--;
+        int least = minimum(h-1);
+        if (c.n >= least) return true;
+
+        if      (i > 0      && child(in, i-1).n > least) borrowFromLeft(in, i, h-1);
+        else if (i+1 < in.n && child(in, i+1).n > least) borrowFromRight(in, i, h-1);
+        else if (i > 0)                                  merge(in, i-1, h-1);
+        else                                             merge(in, i, h-1);
+        return true;
+    }
+
+    // move the last key (or child) of child i-1 of x to the front of child i,
+    // both of height h
+    private void borrowFromLeft(Inner x, int i, int h) {
+        Node l = child(x, i-1), c = child(x, i);
+        int moved;
+        if (h == 0) {
+            Leaf ll = (Leaf) l, cc = (Leaf) c;
+            System.arraycopy(cc.keys, 0, cc.keys, 1, cc.n);
+            System.arraycopy(cc.vals, 0, cc.vals, 1, cc.n);
+            cc.keys[0] = ll.keys[ll.n-1];
+            cc.vals[0] = ll.vals[ll.n-1];
+            ll.keys[ll.n-1] = null;
+            ll.vals[ll.n-1] = null;
+            moved = 1;
+            x.keys[i] = cc.keys[0];
+        }
+        else {
+            Inner li = (Inner) l, ci = (Inner) c;
+            System.arraycopy(ci.children, 0, ci.children, 1, ci.n);
+            System.arraycopy(ci.counts,   0, ci.counts,   1, ci.n);
+            System.arraycopy(ci.keys,     0, ci.keys,     1, ci.n);
+            ci.children[0] = li.children[li.n-1];
+            ci.counts[0] = li.counts[li.n-1];
+            ci.keys[1] = x.keys[i];
+            ci.keys[0] = li.keys[li.n-1];
+            x.keys[i] = ci.keys[0];
+            li.children[li.n-1] = null;
+            li.keys[li.n-1] = null;
+            moved = ci.counts[0];
+        }
+        l.n--;
+        c.n++;
+        l.N -= moved;
+        c.N += moved;
+        x.counts[i-1] -= moved;
+        x.counts[i]   += moved;
+    }
+
+    // move the first key (or child) of child i+1 of x to the end of child i,
+    // both of height h
+    private void borrowFromRight(Inner x, int i, int h) {
+        Node c = child(x, i), r = child(x, i+1);
+        int moved;
+        if (h == 0) {
+            Leaf cc = (Leaf) c, rr = (Leaf) r;
+            cc.keys[cc.n] = rr.keys[0];
+            cc.vals[cc.n] = rr.vals[0];
+            System.arraycopy(rr.keys, 1, rr.keys, 0, rr.n - 1);
+            System.arraycopy(rr.vals, 1, rr.vals, 0, rr.n - 1);
+            rr.keys[rr.n-1] = null;
+            rr.vals[rr.n-1] = null;
+            moved = 1;
+            x.keys[i+1] = rr.keys[0];
+        }
+        else {
+            Inner ci = (Inner) c, ri = (Inner) r;
+            ci.children[ci.n] = ri.children[0];
+            ci.counts[ci.n] = ri.counts[0];
+            ci.keys[ci.n] = x.keys[i+1];
+            moved = ri.counts[0];
+            System.arraycopy(ri.children, 1, ri.children, 0, ri.n - 1);
+            System.arraycopy(ri.counts,   1, ri.counts,   0, ri.n - 1);
+            System.arraycopy(ri.keys,     1, ri.keys,     0, ri.n - 1);
+            ri.children[ri.n-1] = null;
+            ri.keys[ri.n-1] = null;
+            x.keys[i+1] = ri.keys[0];
+        }
+        c.n++;
+        r.n--;
+        c.N += moved;
+        r.N -= moved;
+        x.counts[i]   += moved;
+        x.counts[i+1] -= moved;
+    }
+
+    // append child i+1 of x to child i, both of height h, and remove it from x
+    private void merge(Inner x, int i, int h) {
+        Node l = child(x, i), r = child(x, i+1);
+        if (h == 0) {
+            Leaf ll = (Leaf) l, rr = (Leaf) r;
+            System.arraycopy(rr.keys, 0, ll.keys, ll.n, rr.n);
+            System.arraycopy(rr.vals, 0, ll.vals, ll.n, rr.n);
+            ll.next = rr.next;
+            if (ll.next != null) ll.next.prev = ll;
+        }
+        else {
+            Inner li = (Inner) l, ri = (Inner) r;
+            System.arraycopy(ri.children, 0, li.children, li.n, ri.n);
+            System.arraycopy(ri.counts,   0, li.counts,   li.n, ri.n);
+            System.arraycopy(ri.keys,     0, li.keys,     li.n, ri.n);
+            li.keys[li.n] = x.keys[i+1];
+        }
+        l.n += r.n;
+        l.N += r.N;
+        x.counts[i] += x.counts[i+1];
+
+        System.arraycopy(x.children, i+2, x.children, i+1, x.n - i - 2);
+        System.arraycopy(x.counts,   i+2, x.counts,   i+1, x.n - i - 2);
+        System.arraycopy(x.keys,     i+2, x.keys,     i+1, x.n - i - 2);
+        x.n--;
+        x.children[x.n] = null;
+        x.keys[x.n] = null;
+    }
+
+
+   /*************************************************************************
+    *  Ordered symbol table methods
+    *************************************************************************/
+
+    // the leftmost and rightmost leaves
+    private Leaf first() {
+        Node x = root;
+        for (int h = height; h > 0; h--)
+            x = child((Inner) x, 0);
+        return (Leaf) x;
+    }
+
+    private Leaf last() {
+        Node x = root;
+        for (int h = height; h > 0; h--)
+            x = child((Inner) x, x.n - 1);
+        return (Leaf) x;
+    }
+
+    // the smallest key; null if the table is empty
+    public Key min() {
+        if (isEmpty()) return null;
+        return key(first(), 0);
+    }
+
+    // the largest key; null if the table is empty
+    public Key max() {
+        if (isEmpty()) return null;
+        Leaf x = last();
+        return key(x, x.n - 1);
+    }
+
+    // largest key <= key: in the leaf of key, or the last key of the leaf before
+    public Key floor(Key key) {
+        Leaf x = leaf(key);
+        int i = search(x, key);
+        if (i >= 0) return key(x, i);
+        i = -i - 1;
+        if (i > 0)          return key(x, i-1);
+        if (x.prev != null) return key(x.prev, x.prev.n - 1);
+        return null;
+    }
+
+    // smallest key >= key: in the leaf of key, or the first key of the leaf after
+    public Key ceiling(Key key) {
+        Leaf x = leaf(key);
+        int i = search(x, key);
+        if (i >= 0) return key(x, i);
+        i = -i - 1;
+        if (i < x.n)        return key(x, i);
+        if (x.next != null) return key(x.next, 0);
+        return null;
+    }
+
+    // the key of rank k; null if there is none
+    public Key select(int k) {
+        if (k < 0 || k >= size()) return null;
+        Node x = root;
+        for (int h = height; h > 0; h--) {
+            Inner in = (Inner) x;
+            int i = 0;
+            while (k >= in.counts[i])
+                k -= in.counts[i++];
+            x = child(in, i);
+        }
+        return key(x, k);
+    }
+
+    // number of keys less than key
+    public int rank(Key key) {
+        int r = 0;
+        Node x = root;
+        for (int h = height; h > 0; h--) {
+            Inner in = (Inner) x;
+            int i = search(in, key);
+            for (int j = 0; j < i; j++)
+                r += in.counts[j];
+            x = child(in, i);
+        }
+        int i = search((Leaf) x, key);
+        return r + (i >= 0 ? i : -i - 1);
+    }
+
+
+   /*************************************************************************
+    *  Range count and range search
+    *************************************************************************/
+
+    // all of the keys, in ascending order
+    public Iterable<Key> keys() {
+        Queue<Key> queue = new Queue<Key>();
+        for (Cursor c = cursor(); c.hasNext(); )
+            queue.enqueue(c.next());
+        return queue;
+    }
+
+    // the keys in [lo, hi], in ascending order
+    public Iterable<Key> keys(Key lo, Key hi) {
+        Queue<Key> queue = new Queue<Key>();
+        for (Cursor c = cursor(lo, hi); c.hasNext(); )
+            queue.enqueue(c.next());
+        return queue;
+    }
+
+    // number of keys in [lo, hi]
+    public int size(Key lo, Key hi) {
+        if (lo.compareTo(hi) > 0) return 0;
+        if (contains(hi)) return rank(hi) - rank(lo) + 1;
+        else              return rank(hi) - rank(lo);
+    }
+
+    // a cursor over all the keys, in ascending order
+    public Cursor cursor() {
+        return new Cursor(null, null);
+    }
+
+    // a cursor over the keys in [lo, hi], in ascending order
+    public Cursor cursor(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in cursor()");
+        if (hi == null) throw new NullPointerException("hi is null in cursor()");
+        return new Cursor(lo, hi);
+    }
+
+    // a position in the chain of leaves: one descent to find the first key,
+    // then next() only steps along a leaf, and across a link to the next
+    // one. The tree must not be changed while a cursor is in use.
+    public class Cursor implements Iterator<Key> {
+        private final Key lo, hi;          // bounds, null if unbounded
+        private Leaf leaf;                 // leaf of the next key, null at the end
+        private int i;                     // index of the next key in leaf
+        private Leaf lastLeaf;             // leaf and index of the key returned by next()
+        private int last;
+
+        private Cursor(Key lo, Key hi) {
+            this.lo = lo;
+            this.hi = hi;
+            seek(lo);
+        }
+
+        // move to the smallest key >= key (and >= lo); null means lo
+        public void seek(Key key) {
+            if (key == null || (lo != null && key.compareTo(lo) < 0)) key = lo;
+            lastLeaf = null;
+            if (key == null) {
+                leaf = first();
+                i = 0;
+            }
+            else {
+                leaf = leaf(key);
+                i = search(leaf, key);
+                if (i < 0) i = -i - 1;
+            }
+            if (i == leaf.n) {
+                leaf = leaf.next;
+                i = 0;
+            }
+        }
+
+        public boolean hasNext() {
+            return leaf != null && (hi == null || hi.compareTo(key(leaf, i)) >= 0);
+        }
+
+        public Key next() {
+            if (!hasNext()) throw new NoSuchElementException("no more keys in range");
+            lastLeaf = leaf;
+            last = i++;
+            if (i == leaf.n) {
+                leaf = leaf.next;
+                i = 0;
+            }
+            return key(lastLeaf, last);
+        }
+
+        // the value of the key last returned by next()
+        @SuppressWarnings("unchecked")
+        public Value value() {
+            if (lastLeaf == null) throw new IllegalStateException("next() has not been called since the last seek()");
+            return (Value) lastLeaf.vals[last];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+   /*************************************************************************
+    *  Check integrity of the B+-tree
+    *************************************************************************/
+    private boolean check() {
+        if (!isBalanced())       StdOut.println("Nodes too full, too empty or out of order");
+        if (!isLinked())         StdOut.println("Leaves not linked in order");
+        if (!isRankConsistent()) StdOut.println("Ranks not consistent");
+        return isBalanced() && isLinked() && isRankConsistent();
+    }
+
+    // is every node of the right fullness, with its keys in [lo, hi) and
+    // correct counts? (all leaves are at the same depth by construction)
+    private boolean isBalanced() {
+        if (height > 0 && root.n < 2) return false;
+        return isBalanced(root, height, null, null);
+    }
+
+    private boolean isBalanced(Node x, int h, Key lo, Key hi) {
+        if (x != root && (x.n < minimum(h) || x.n > (h == 0 ? M-1 : M))) return false;
+        if (h == 0) {
+            if (x.N != x.n) return false;
+            for (int i = 0; i < x.n; i++) {
+                if (i > 0 && key(x, i-1).compareTo(key(x, i)) >= 0) return false;
+                if (lo != null && key(x, i).compareTo(lo) <  0) return false;
+                if (hi != null && key(x, i).compareTo(hi) >= 0) return false;
+            }
+            return true;
+        }
+        Inner in = (Inner) x;
+        int n = 0;
+        for (int i = 0; i < in.n; i++) {
+            Key l = (i == 0)        ? lo : key(in, i);
+            Key r = (i == in.n - 1) ? hi : key(in, i+1);
+            if (in.counts[i] != child(in, i).N) return false;
+            if (!isBalanced(child(in, i), h-1, l, r)) return false;
+            n += in.counts[i];
+        }
+        return n == in.N;
+    }
+
+    // do the links between the leaves go through all the keys in order, both ways?
+    private boolean isLinked() {
+        int n = 0;
+        Key prev = null;
+        for (Leaf x = first(); x != null; x = x.next) {
+            if (x.next != null && x.next.prev != x) return false;
+            for (int i = 0; i < x.n; i++, n++) {
+                if (prev != null && prev.compareTo(key(x, i)) >= 0) return false;
+                prev = key(x, i);
+            }
+        }
+        return n == size();
+    }
+
+    // check that ranks are consistent
+    private boolean isRankConsistent() {
+        for (int i = 0; i < size(); i++)
+            if (i != rank(select(i))) return false;
+        for (Key key : keys())
+            if (key.compareTo(select(rank(key))) != 0) return false;
+        return true;
+    }
+
+
+   /*****************************************************************************
+    *  Test client: n random keys in a RedBlackBST and in this tree
+    *****************************************************************************/
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int M = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ORDER;
+        Random random = new Random(42);
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = random.nextInt();
+
+        for (int round = 0; round < 3; round++) {
+            long before = heapUsed();
+            long start = System.nanoTime();
+            RedBlackBST<Integer, Integer> rb = new RedBlackBST<Integer, Integer>();
+            for (Integer key : keys) rb.put(key, key);
+            long put = System.nanoTime() - start;
+            long heap = heapUsed() - before;
+            start = System.nanoTime();
+            for (Integer key : keys) if (rb.get(key) == null) throw new IllegalStateException();
+            long get = System.nanoTime() - start;
+            start = System.nanoTime();
+            long sum = 0;
+            for (Integer key : rb.keys()) sum += key;
+            long scan = System.nanoTime() - start;
+            report("RedBlackBST", n, put, get, scan, heap);
+            rb = null;
+
+            before = heapUsed();
+            start = System.nanoTime();
+            SearchTree23<Integer, Integer> bt = new SearchTree23<Integer, Integer>(M);
+            for (Integer key : keys) bt.put(key, key);
+            put = System.nanoTime() - start;
+            heap = heapUsed() - before;
+            start = System.nanoTime();
+            for (Integer key : keys) if (bt.get(key) == null) throw new IllegalStateException();
+            get = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (Integer key : bt.keys()) sum -= key;
+            scan = System.nanoTime() - start;
+            report("SearchTree23(" + M + ")", n, put, get, scan, heap);
+            if (sum != 0) throw new IllegalStateException("scans disagree");
+        }
+    }
+
+    private static long heapUsed() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, int n, long put, long get, long scan, long heap) {
+        StdOut.printf("%-17s put %4d ns, get %4d ns, scan %3d ns per key, %3d bytes per key\n",
+                      name, put / n, get / n, scan / n, heap / n);
+    }
 }
@@ -0,0 +1,25 @@
+/*************************************************************************
+ *  Compilation:  see README.md (needs the JMH jars in lib/)
+ *  Execution:    java -cp "bin:lib/*" org.openjdk.jmh.Main IntegerKeyBenchmark
+ *  Dependencies: SymbolTableBenchmark.java Workload.java SymbolTables.java
+ *
+ *  SymbolTableBenchmark with random Integer keys, for every symbol table
+ *  that accepts them.
+ *
+ *************************************************************************/
+
+import org.openjdk.jmh.annotations.Param;
+
+public class IntegerKeyBenchmark extends SymbolTableBenchmark<Integer> {
+
+    @Param({ "ST", "BinarySearchST", "BST", "RedBlackBST", "SearchTree23", "SeparateChainingHashST", "LinearProbingHashST" })
+    public String impl;
+
+    protected Integer[] keys(int n, long seed) {
+        return Workload.integerKeys(n, seed);
+    }
+
+    protected SymbolTables.SymbolTable<Integer, Integer> table() {
+        return SymbolTables.<Integer, Integer>create(impl);
+    }
+}
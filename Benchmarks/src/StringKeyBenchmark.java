@@ -0,0 +1,25 @@
+/*************************************************************************
+ *  Compilation:  see README.md (needs the JMH jars in lib/)
+ *  Execution:    java -cp "bin:lib/*" org.openjdk.jmh.Main StringKeyBenchmark
+ *  Dependencies: SymbolTableBenchmark.java Workload.java SymbolTables.java
+ *
+ *  SymbolTableBenchmark with random String keys of 8 to 16 letters, for
+ *  every symbol table including TST.
+ *
+ *************************************************************************/
+
+import org.openjdk.jmh.annotations.Param;
+
+public class StringKeyBenchmark extends SymbolTableBenchmark<String> {
+
+    @Param({ "ST", "BinarySearchST", "BST", "RedBlackBST", "SearchTree23", "SeparateChainingHashST", "LinearProbingHashST", "TST" })
+    public String impl;
+
+    protected String[] keys(int n, long seed) {
+        return Workload.stringKeys(n, seed);
+    }
+
+    protected SymbolTables.SymbolTable<String, Integer> table() {
+        return SymbolTables.<Integer>createForStrings(impl);
+    }
+}
@@ -0,0 +1,97 @@
+/*************************************************************************
+ *  Compilation:  see README.md (needs the JMH jars in lib/)
+ *  Dependencies: Workload.java SymbolTables.java
+ *
+ *  The JMH benchmark shared by IntegerKeyBenchmark and StringKeyBenchmark:
+ *  each invocation performs the next operation of a Workload on a symbol
+ *  table that was filled with a random half of the key universe.
+ *
+ *  Reported per configuration:
+ *  - Throughput:  operations per microsecond
+ *  - SampleTime:  latency per operation with p50/p90/p99/p99.9 percentiles
+ *  - allocation rate (MB/sec and bytes/op) when run with -prof gc
+ *
+ *  The table is filled once per fork and then keeps changing with the
+ *  put/delete share of the mix, exactly as the same seed dictates in
+ *  every run.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = { "-Xms2g", "-Xmx2g", "-XX:+AlwaysPreTouch" })
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+public abstract class SymbolTableBenchmark<Key> {
+    private static final int OPERATIONS = 1 << 20;    // length of the operation stream
+
+    @Param({ "100000" })
+    public int size;                                   // number of distinct keys
+
+    @Param({ "uniform", "zipf", "sorted" })
+    public String distribution;
+
+    @Param({ "100/0/0", "90/9/1", "50/25/25" })
+    public String mix;                                 // get/put/delete percentages
+
+    @Param({ "42" })
+    public long seed;
+
+    private SymbolTables.SymbolTable<Key, Integer> st;
+    private Key[] universe;
+    private int[] keys;                                // copied out of the Workload
+    private byte[] ops;
+    private int next;                                  // next operation
+    private final Integer value = 42;                  // every put stores this (no boxing in the loop)
+
+    // n distinct keys in ascending order
+    protected abstract Key[] keys(int n, long seed);
+
+    // an empty symbol table of the benchmarked implementation
+    protected abstract SymbolTables.SymbolTable<Key, Integer> table();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        universe = keys(size, seed);
+        Workload w = new Workload(size, OPERATIONS, distribution, mix, seed);
+        keys = new int[OPERATIONS];
+        ops  = new byte[OPERATIONS];
+        for (int i = 0; i < OPERATIONS; i++) {
+            keys[i] = w.key(i);
+            ops[i]  = w.op(i);
+        }
+
+        st = table();
+        for (int i : Workload.prefill(size, seed))
+            st.put(universe[i], value);
+        next = 0;
+    }
+
+    @Benchmark
+    public Integer operation() {
+        int i = next;
+        next = (i + 1) & (OPERATIONS - 1);
+        Key key = universe[keys[i]];
+        switch (ops[i]) {
+            case Workload.GET: return st.get(key);
+            case Workload.PUT: st.put(key, value); return null;
+            default:           st.delete(key);     return null;
+        }
+    }
+}
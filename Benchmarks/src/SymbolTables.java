@@ -0,0 +1,99 @@
+/*************************************************************************
+ *  Compilation:  javac SymbolTables.java
+ *  Dependencies: ST.java BinarySearchST.java BST.java RedBlackBST.java SearchTree23.java
+ *                SeparateChainingHashST.java LinearProbingHashST.java
+ *                TST.java
+ *
+ *  The symbol table implementations of the other folders behind one
+ *  get / put / delete interface, so that a benchmark can pick one by
+ *  name (a JMH @Param).
+ *
+ *************************************************************************/
+
+public class SymbolTables {
+
+    // the operations every benchmarked symbol table supports
+    public interface SymbolTable<Key, Value> {
+        Value get(Key key);
+        void put(Key key, Value val);
+        void delete(Key key);
+    }
+
+    // an empty symbol table of the named implementation
+    public static <Key extends Comparable<Key>, Value> SymbolTable<Key, Value> create(String name) {
+        if (name.equals("ST")) {
+            final ST<Key, Value> st = new ST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        if (name.equals("BinarySearchST")) {
+            final BinarySearchST<Key, Value> st = new BinarySearchST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        if (name.equals("BST")) {
+            final BST<Key, Value> st = new BST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        if (name.equals("RedBlackBST")) {
+            final RedBlackBST<Key, Value> st = new RedBlackBST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+
+                // RedBlackBST.delete() reports a missing key on System.err
+                public void delete(Key key)        { if (st.contains(key)) st.delete(key); }
+            };
+        }
+        if (name.equals("SearchTree23")) {
+            final SearchTree23<Key, Value> st = new SearchTree23<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        if (name.equals("SeparateChainingHashST")) {
+            final SeparateChainingHashST<Key, Value> st = new SeparateChainingHashST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        if (name.equals("LinearProbingHashST")) {
+            final LinearProbingHashST<Key, Value> st = new LinearProbingHashST<Key, Value>();
+            return new SymbolTable<Key, Value>() {
+                public Value get(Key key)          { return st.get(key); }
+                public void put(Key key, Value val) { st.put(key, val);   }
+                public void delete(Key key)        { st.delete(key);     }
+            };
+        }
+        throw new IllegalArgumentException("unknown symbol table: " + name);
+    }
+
+    // as create(), also accepting "TST", which only takes String keys
+    public static <Value> SymbolTable<String, Value> createForStrings(String name) {
+        if (name.equals("TST")) {
+            final TST<Value> st = new TST<Value>();
+            return new SymbolTable<String, Value>() {
+                public Value get(String key)          { return st.get(key); }
+                public void put(String key, Value val) { st.put(key, val);   }
+
+                // TST has no delete(): clearing the value hides the key from get()
+                public void delete(String key)        { st.put(key, null);  }
+            };
+        }
+        return SymbolTables.<String, Value>create(name);
+    }
+}
@@ -0,0 +1,171 @@
+/*************************************************************************
+ *  Compilation:  javac Workload.java
+ *  Execution:    java Workload n distribution mix
+ *  Dependencies: StdOut.java
+ *
+ *  A reproducible stream of symbol table operations for the benchmarks.
+ *
+ *  The keys come from a fixed universe of n distinct keys (Integer or
+ *  String), sorted so that universe index order is key order. Each
+ *  operation names a universe index and one of get / put / delete:
+ *
+ *  - uniform: every key is equally likely
+ *  - zipf:    key of popularity rank r has probability ~ 1/r^0.99 (the YCSB
+ *             skew); ranks are scattered over the universe at random, so the
+ *             hot keys are not all next to each other in key order
+ *  - sorted:  the keys are visited in ascending order, wrapping around
+ *
+ *  The mix is "get/put/delete" in percent, e.g. "90/9/1". Everything is
+ *  derived from the seed, so two runs with the same parameters perform
+ *  exactly the same operations.
+ *
+ *  % java Workload 10 zipf 90/9/1
+ *  put 4
+ *  get 6
+ *  get 6
+ *  get 1
+ *  ...
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+public class Workload {
+    public static final byte GET = 0, PUT = 1, DELETE = 2;
+    private static final double ZIPF_THETA = 0.99;
+
+    private final int[] keys;    // keys[i] = universe index used by operation i
+    private final byte[] ops;    // ops[i]  = GET, PUT or DELETE
+
+    // a stream of length operations (a power of two, so callers can wrap with a mask)
+    // on a universe of n keys
+    public Workload(int n, int length, String distribution, String mix, long seed) {
+        if (n < 1) throw new IllegalArgumentException("universe must not be empty");
+        if (Integer.bitCount(length) != 1) throw new IllegalArgumentException("length must be a power of two: " + length);
+        Random random = new Random(seed);
+        keys = new int[length];
+        ops  = new byte[length];
+
+        String[] parts = mix.split("/");
+        if (parts.length != 3) throw new IllegalArgumentException("mix must be get/put/delete: " + mix);
+        int get = Integer.parseInt(parts[0]);
+        int put = Integer.parseInt(parts[1]);
+        if (get + put + Integer.parseInt(parts[2]) != 100)
+            throw new IllegalArgumentException("mix must add up to 100: " + mix);
+
+        if (distribution.equals("uniform")) {
+            for (int i = 0; i < length; i++)
+                keys[i] = random.nextInt(n);
+        }
+        else if (distribution.equals("zipf")) {
+            double[] cdf = zipfCdf(n);
+            int[] byRank = permutation(n, random);
+            for (int i = 0; i < length; i++) {
+                int rank = Arrays.binarySearch(cdf, random.nextDouble());
+                if (rank < 0) rank = -rank - 1;
+                keys[i] = byRank[Math.min(rank, n - 1)];
+            }
+        }
+        else if (distribution.equals("sorted")) {
+            for (int i = 0; i < length; i++)
+                keys[i] = i % n;
+        }
+        else throw new IllegalArgumentException("unknown distribution: " + distribution);
+
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(100);
+            if      (r < get)       ops[i] = GET;
+            else if (r < get + put) ops[i] = PUT;
+            else                    ops[i] = DELETE;
+        }
+    }
+
+    // universe index of the key used by operation i
+    public int key(int i) {
+        return keys[i];
+    }
+
+    // GET, PUT or DELETE
+    public byte op(int i) {
+        return ops[i];
+    }
+
+    // number of operations in the stream
+    public int length() {
+        return ops.length;
+    }
+
+    // cumulative distribution of the Zipf ranks 0 to n-1
+    private static double[] zipfCdf(int n) {
+        double[] cdf = new double[n];
+        double sum = 0.0;
+        for (int r = 0; r < n; r++) {
+            sum += 1.0 / Math.pow(r + 1, ZIPF_THETA);
+            cdf[r] = sum;
+        }
+        for (int r = 0; r < n; r++)
+            cdf[r] /= sum;
+        return cdf;
+    }
+
+    // a random permutation of 0 to n-1 (Knuth shuffle)
+    public static int[] permutation(int n, Random random) {
+        int[] a = new int[n];
+        for (int i = 0; i < n; i++)
+            a[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+
+    // the universe indices to insert before measuring: a random half of the
+    // universe, in random order (so the ordered BSTs start out balanced)
+    public static int[] prefill(int n, long seed) {
+        return Arrays.copyOf(permutation(n, new Random(seed ^ 0x5DEECE66DL)), n / 2);
+    }
+
+    // n distinct random Integer keys, in ascending order
+    public static Integer[] integerKeys(int n, long seed) {
+        Random random = new Random(seed);
+        HashSet<Integer> set = new HashSet<Integer>();
+        while (set.size() < n)
+            set.add(random.nextInt());
+        Integer[] a = set.toArray(new Integer[n]);
+        Arrays.sort(a);
+        return a;
+    }
+
+    // n distinct random String keys of 8 to 16 lowercase letters, in ascending order
+    public static String[] stringKeys(int n, long seed) {
+        Random random = new Random(seed);
+        HashSet<String> set = new HashSet<String>();
+        char[] buf = new char[16];
+        while (set.size() < n) {
+            int length = 8 + random.nextInt(9);
+            for (int i = 0; i < length; i++)
+                buf[i] = (char) ('a' + random.nextInt(26));
+            set.add(new String(buf, 0, length));
+        }
+        String[] a = set.toArray(new String[n]);
+        Arrays.sort(a);
+        return a;
+    }
+
+
+   /***********************************************************************
+    *  Test client: print the first operations of a stream.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        Workload w = new Workload(n, 1 << 10, args[1], args[2], 42);
+        String[] names = { "get", "put", "delete" };
+        for (int i = 0; i < 20; i++)
+            StdOut.println(names[w.op(i)] + " " + w.key(i));
+    }
+}
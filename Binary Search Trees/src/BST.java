@@ -5,6 +5,25 @@
  *  Data files:   http://algs4.cs.princeton.edu/32bst/tinyST.txt  
  *
  *  A symbol table implemented with a binary search tree.
+ *
+ *  Every operation is a loop rather than a recursion, so no input makes
+ *  it overflow the call stack. Nearly sorted input would still build a
+ *  tree as deep as a linked list, so the tree is also a scapegoat tree
+ *  (Galperin and Rivest): when put() places a node deeper than
+ *  log_{1/ALPHA} N, it walks back up to the lowest ancestor x with a
+ *  child holding more than ALPHA of x's nodes and rebuilds that subtree
+ *  perfectly balanced, using the subtree counts N that the nodes already
+ *  keep. When deletes shrink the tree below ALPHA times its largest size
+ *  since the last full rebuild, the whole tree is rebuilt. The depth stays
+ *  below log_{1/ALPHA} N + 2 (~2.4 lg N), and the rebuilds cost O(log N)
+ *  amortized per operation. Random inputs rarely trigger a rebuild at all.
+ *
+ *  fromSorted() builds a perfectly balanced tree straight from sorted
+ *  arrays in linear time, building big subtrees in parallel (fork/join).
+ *
+ *  keys() collects the keys into a Queue first; cursor() and
+ *  spliterator() walk the tree lazily instead, for range scans that are
+ *  long, stop early, or feed a (parallel) stream.
  * 
  *  % more tinyST.txt
  *  S E A R C H E X A M P L E
@@ -25,10 +44,22 @@
 
  // ! BINARY SEARCH TREE SYMBOL TABLE
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 
 public class BST<Key extends Comparable<Key>, Value> {
+    private static final double ALPHA = 0.75;   // max fraction of a subtree in one child
+    private static final int PARALLEL_CUTOFF = 1 << 13;  // fromSorted() builds smaller subtrees sequentially
+
     private Node root;             // root of BST
+    private int maxN;              // largest size since the whole tree was last rebuilt
+    private Object[] path = new Object[16];     // nodes from the root visited by put() and delete()
 
     private class Node {
         private Key key;           // sorted by key
@@ -59,6 +90,66 @@ public class BST<Key extends Comparable<Key>, Value> {
         else return x.N;
     }
 
+   /***********************************************************************
+    *  Bulk construction from sorted input
+    ***********************************************************************/
+
+    // a perfectly balanced BST of keys[i], vals[i], in linear time;
+    // keys[] must be strictly increasing
+    public static <Key extends Comparable<Key>, Value> BST<Key, Value> fromSorted(Key[] keys, Value[] vals) {
+        checkSorted(keys, vals);
+        BST<Key, Value> st = new BST<Key, Value>();
+        st.root = ForkJoinPool.commonPool().invoke(st.new Build(keys, vals, 0, keys.length - 1));
+        st.maxN = keys.length;
+        assert st.check();
+        return st;
+    }
+
+    // throw IllegalArgumentException unless keys[] is strictly increasing,
+    // vals[] is as long, and neither holds null
+    private static <Key extends Comparable<Key>> void checkSorted(Key[] keys, Object[] vals) {
+        if (keys.length != vals.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + " != " + vals.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) throw new IllegalArgumentException("null key at index " + i);
+            if (vals[i] == null) throw new IllegalArgumentException("null value at index " + i);
+            if (i > 0 && keys[i-1].compareTo(keys[i]) >= 0)
+                throw new IllegalArgumentException("keys not strictly increasing at index " + i);
+        }
+    }
+
+    // build the subtree of keys[lo..hi]: the middle key is the root
+    @SuppressWarnings("serial")
+    private class Build extends RecursiveTask<Node> {
+        private final Key[] keys;
+        private final Value[] vals;
+        private final int lo, hi;
+
+        public Build(Key[] keys, Value[] vals, int lo, int hi) {
+            this.keys = keys;
+            this.vals = vals;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Node compute() {
+            if (lo > hi) return null;
+            int mid = lo + (hi - lo) / 2;
+            Node x = new Node(keys[mid], vals[mid], hi - lo + 1);
+            if (hi - lo < PARALLEL_CUTOFF) {
+                x.left  = new Build(keys, vals, lo, mid - 1).compute();
+                x.right = new Build(keys, vals, mid + 1, hi).compute();
+            }
+            else {
+                Build left = new Build(keys, vals, lo, mid - 1);
+                left.fork();
+                x.right = new Build(keys, vals, mid + 1, hi).compute();
+                x.left  = left.join();
+            }
+            return x;
+        }
+    }
+
    /***********************************************************************
     *  Search BST for given key, and return associated value if found,
     *  return null if not found
@@ -70,15 +161,14 @@ public class BST<Key extends Comparable<Key>, Value> {
 
     // return value associated with the given key, or null if no such key exists
     public Value get(Key key) {
-        return get(root, key);
-    }
-
-    private Value get(Node x, Key key) {
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if      (cmp < 0) return get(x.left, key);
-        else if (cmp > 0) return get(x.right, key);
-        else              return x.val;
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if      (cmp < 0) x = x.left;
+            else if (cmp > 0) x = x.right;
+            else              return x.val;
+        }
+        return null;
     }
 
    /***********************************************************************
@@ -87,72 +177,163 @@ public class BST<Key extends Comparable<Key>, Value> {
     ***********************************************************************/
     public void put(Key key, Value val) {
         if (val == null) { delete(key); return; }
-        root = put(root, key, val);
+        if (root == null) {
+            root = new Node(key, val, 1);
+            maxN = Math.max(maxN, 1);
+            return;
+        }
+
+        // find the key, or the node to hang it from, remembering the path
+        int d = 0;
+        Node x = root;
+        while (true) {
+            int cmp = key.compareTo(x.key);
+            if (cmp == 0) { x.val = val; return; }
+            setPath(d++, x);
+            Node next = (cmp < 0) ? x.left : x.right;
+            if (next == null) break;
+            x = next;
+        }
+        Node z = new Node(key, val, 1);
+        if (key.compareTo(x.key) < 0) x.left  = z;
+        else                          x.right = z;
+        for (int i = 0; i < d; i++)
+            node(i).N++;
+        maxN = Math.max(maxN, size());
+
+        // too deep: rebuild the subtree of the lowest ancestor that is out of balance
+        if (d > maxDepth(size())) {
+            Node child = z;
+            for (int i = d-1; i >= 0; i--) {
+                Node y = node(i);
+                if (size(child) > ALPHA * size(y)) {
+                    replace(i > 0 ? node(i-1) : null, y, rebuild(y));
+                    break;
+                }
+                child = y;
+            }
+        }
         assert check();
     }
 
-    private Node put(Node x, Key key, Value val) {
-        if (x == null) return new Node(key, val, 1);
-        int cmp = key.compareTo(x.key);
-        if      (cmp < 0) x.left  = put(x.left,  key, val);
-        else if (cmp > 0) x.right = put(x.right, key, val);
-        else              x.val   = val;
-        x.N = 1 + size(x.left) + size(x.right);
-        return x;
+    // path[i] = x, growing path[] if needed
+    private void setPath(int i, Node x) {
+        if (i == path.length) path = Arrays.copyOf(path, 2*i);
+        path[i] = x;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node node(int i) {
+        return (Node) path[i];
+    }
+
+    // deepest a node may be in a tree of n nodes: log_{1/ALPHA} n
+    private static int maxDepth(int n) {
+        return (int) (Math.log(n) / Math.log(1.0 / ALPHA));
+    }
+
+    // make y's place under parent (the root if parent is null) hold x instead
+    private void replace(Node parent, Node y, Node x) {
+        if      (parent == null)    root = x;
+        else if (parent.left == y)  parent.left = x;
+        else                        parent.right = x;
     }
 
    /***********************************************************************
-    *  Delete
+    *  Scapegoat rebuilding
     ***********************************************************************/
 
-    public void deleteMin() {
-        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow");
-        root = deleteMin(root);
-        assert check();
+    // a perfectly balanced tree of the nodes of the subtree x, reusing them
+    @SuppressWarnings("unchecked")
+    private Node rebuild(Node x) {
+        Object[] nodes = new Object[size(x)];
+        int n = 0;
+
+        // in-order walk with an explicit stack
+        Object[] stack = new Object[16];
+        int top = 0;
+        while (x != null || top > 0) {
+            while (x != null) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, 2*top);
+                stack[top++] = x;
+                x = x.left;
+            }
+            x = (Node) stack[--top];
+            nodes[n++] = x;
+            x = x.right;
+        }
+        return build(nodes, 0, n-1);
     }
 
-    private Node deleteMin(Node x) {
-        if (x.left == null) return x.right;
-        x.left = deleteMin(x.left);
-        x.N = size(x.left) + size(x.right) + 1;
+    // balanced tree of nodes[lo..hi] (recursion depth is only lg of the size)
+    @SuppressWarnings("unchecked")
+    private Node build(Object[] nodes, int lo, int hi) {
+        if (lo > hi) return null;
+        int mid = lo + (hi - lo) / 2;
+        Node x = (Node) nodes[mid];
+        x.left  = build(nodes, lo, mid - 1);
+        x.right = build(nodes, mid + 1, hi);
+        x.N = hi - lo + 1;
         return x;
     }
 
-    public void deleteMax() {
+   /***********************************************************************
+    *  Delete
+    ***********************************************************************/
+
+    public void deleteMin() {
         if (isEmpty()) throw new NoSuchElementException("Symbol table underflow");
-        root = deleteMax(root);
-        assert check();
+        delete(min());
     }
 
-    private Node deleteMax(Node x) {
-        if (x.right == null) return x.left;
-        x.right = deleteMax(x.right);
-        x.N = size(x.left) + size(x.right) + 1;
-        return x;
+    public void deleteMax() {
+        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow");
+        delete(max());
     }
 
+    // Hibbard deletion: a node with two children is replaced by its successor
     public void delete(Key key) {
-        root = delete(root, key);
+        int d = 0;
+        Node t = root;
+        while (t != null) {
+            int cmp = key.compareTo(t.key);
+            if (cmp == 0) break;
+            setPath(d++, t);
+            t = (cmp < 0) ? t.left : t.right;
+        }
+        if (t == null) return;
+
+        Node x;
+        if      (t.right == null) x = t.left;
+        else if (t.left  == null) x = t.right;
+        else {
+            // unlink the minimum of t.right, then put it where t was
+            Node parent = null;
+            x = t.right;
+            while (x.left != null) {
+                x.N--;
+                parent = x;
+                x = x.left;
+            }
+            if (parent != null) {
+                parent.left = x.right;
+                x.right = t.right;
+            }
+            x.left = t.left;
+            x.N = size(x.left) + size(x.right) + 1;
+        }
+        replace(d > 0 ? node(d-1) : null, t, x);
+        for (int i = 0; i < d; i++)
+            node(i).N--;
+
+        // shrunk too far since the last full rebuild: rebuild everything
+        if (size() < ALPHA * maxN) {
+            root = rebuild(root);
+            maxN = size();
+        }
         assert check();
     }
 
-    private Node delete(Node x, Key key) {
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if      (cmp < 0) x.left  = delete(x.left,  key);
-        else if (cmp > 0) x.right = delete(x.right, key);
-        else { 
-            if (x.right == null) return x.left;
-            if (x.left  == null) return x.right;
-            Node t = x;
-            x = min(t.right);
-            x.right = deleteMin(t.right);
-            x.left = t.left;
-        } 
-        x.N = size(x.left) + size(x.right) + 1;
-        return x;
-    } 
-
 
    /***********************************************************************
     *  Min, max, floor, and ceiling
@@ -163,8 +344,8 @@ public class BST<Key extends Comparable<Key>, Value> {
     } 
 
     private Node min(Node x) { 
-        if (x.left == null) return x; 
-        else                return min(x.left); 
+        while (x.left != null) x = x.left;
+        return x;
     } 
 
     public Key max() {
@@ -173,73 +354,64 @@ public class BST<Key extends Comparable<Key>, Value> {
     } 
 
     private Node max(Node x) { 
-        if (x.right == null) return x; 
-        else                 return max(x.right); 
+        while (x.right != null) x = x.right;
+        return x;
     } 
 
+    // largest key <= key: the last node where the search went right
     public Key floor(Key key) {
-        Node x = floor(root, key);
-        if (x == null) return null;
-        else return x.key;
-    } 
-
-    private Node floor(Node x, Key key) {
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if (cmp == 0) return x;
-        if (cmp <  0) return floor(x.left, key);
-        Node t = floor(x.right, key); 
-        if (t != null) return t;
-        else return x; 
+        Node best = null;
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp == 0) return x.key;
+            if (cmp < 0) x = x.left;
+            else       { best = x; x = x.right; }
+        }
+        if (best == null) return null;
+        else return best.key;
     } 
 
+    // smallest key >= key: the last node where the search went left
     public Key ceiling(Key key) {
-        Node x = ceiling(root, key);
-        if (x == null) return null;
-        else return x.key;
-    }
-
-    private Node ceiling(Node x, Key key) {
-        if (x == null) return null;
-        int cmp = key.compareTo(x.key);
-        if (cmp == 0) return x;
-        if (cmp < 0) { 
-            Node t = ceiling(x.left, key); 
-            if (t != null) return t;
-            else return x; 
-        } 
-        return ceiling(x.right, key); 
-    } 
+        Node best = null;
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if (cmp == 0) return x.key;
+            if (cmp > 0) x = x.right;
+            else       { best = x; x = x.left; }
+        }
+        if (best == null) return null;
+        else return best.key;
+    }
 
    /***********************************************************************
     *  Rank and selection
     ***********************************************************************/
+    // Return key of rank k. 
     public Key select(int k) {
         if (k < 0 || k >= size())  return null;
-        Node x = select(root, k);
-        return x.key;
+        Node x = root;
+        while (true) {
+            int t = size(x.left); 
+            if      (t > k) x = x.left;
+            else if (t < k) { k -= t + 1; x = x.right; }
+            else            return x.key;
+        }
     }
 
-    // Return key of rank k. 
-    private Node select(Node x, int k) {
-        if (x == null) return null; 
-        int t = size(x.left); 
-        if      (t > k) return select(x.left,  k); 
-        else if (t < k) return select(x.right, k-t-1); 
-        else            return x; 
-    } 
-
+    // Number of keys in the tree less than key.
     public int rank(Key key) {
-        return rank(key, root);
-    } 
-
-    // Number of keys in the subtree less than key.
-    private int rank(Key key, Node x) {
-        if (x == null) return 0; 
-        int cmp = key.compareTo(x.key); 
-        if      (cmp < 0) return rank(key, x.left); 
-        else if (cmp > 0) return 1 + size(x.left) + rank(key, x.right); 
-        else              return size(x.left); 
+        int r = 0;
+        Node x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key); 
+            if      (cmp < 0) x = x.left;
+            else if (cmp > 0) { r += 1 + size(x.left); x = x.right; }
+            else              return r + size(x.left);
+        }
+        return r;
     } 
 
    /***********************************************************************
@@ -251,19 +423,12 @@ public class BST<Key extends Comparable<Key>, Value> {
 
     public Iterable<Key> keys(Key lo, Key hi) {
         Queue<Key> queue = new Queue<Key>();
-        keys(root, queue, lo, hi);
+        if (isEmpty()) return queue;
+        for (Cursor c = cursor(lo, hi); c.hasNext(); )
+            queue.enqueue(c.next());
         return queue;
     } 
 
-    private void keys(Node x, Queue<Key> queue, Key lo, Key hi) { 
-        if (x == null) return; 
-        int cmplo = lo.compareTo(x.key); 
-        int cmphi = hi.compareTo(x.key); 
-        if (cmplo < 0) keys(x.left, queue, lo, hi); 
-        if (cmplo <= 0 && cmphi >= 0) queue.enqueue(x.key); 
-        if (cmphi > 0) keys(x.right, queue, lo, hi); 
-    } 
-
     public int size(Key lo, Key hi) {
         if (lo.compareTo(hi) > 0) return 0;
         if (contains(hi)) return rank(hi) - rank(lo) + 1;
@@ -271,11 +436,151 @@ public class BST<Key extends Comparable<Key>, Value> {
     }
 
 
-    // height of this BST (one-node tree has height 0)
-    public int height() { return height(root); }
-    private int height(Node x) {
-        if (x == null) return -1;
-        return 1 + Math.max(height(x.left), height(x.right));
+   /***********************************************************************
+    *  Range cursors: lazy iteration without building a Queue
+    ***********************************************************************/
+
+    // a cursor over all the keys, in ascending order
+    public Cursor cursor() {
+        return new Cursor(null, null);
+    }
+
+    // a cursor over the keys in [lo, hi], in ascending order
+    public Cursor cursor(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in cursor()");
+        if (hi == null) throw new NullPointerException("hi is null in cursor()");
+        return new Cursor(lo, hi);
+    }
+
+    // an in-order walk with an explicit stack of the ancestors still to be
+    // visited: it finds each key when next() asks for it, so a scan can stop
+    // early or seek() ahead without visiting the keys in between. The
+    // tree must not be changed while a cursor is in use.
+    public class Cursor implements Iterator<Key> {
+        private final Key lo, hi;          // bounds, null if unbounded
+        private Object[] stack = new Object[16];
+        private int n;                     // number of nodes on the stack
+        private Node last;                 // node of the key returned by next()
+
+        private Cursor(Key lo, Key hi) {
+            this.lo = lo;
+            this.hi = hi;
+            seek(lo);
+        }
+
+        // move to the smallest key >= key (and >= lo); null means lo
+        public void seek(Key key) {
+            if (key == null || (lo != null && key.compareTo(lo) < 0)) key = lo;
+            n = 0;
+            last = null;
+            for (Node x = root; x != null; ) {
+                if (key != null && key.compareTo(x.key) > 0) x = x.right;
+                else { push(x); x = x.left; }
+            }
+        }
+
+        private void push(Node x) {
+            if (n == stack.length) stack = Arrays.copyOf(stack, 2*n);
+            stack[n++] = x;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node top() {
+            return (Node) stack[n-1];
+        }
+
+        public boolean hasNext() {
+            return n > 0 && (hi == null || hi.compareTo(top().key) >= 0);
+        }
+
+        public Key next() {
+            if (!hasNext()) throw new NoSuchElementException("no more keys in range");
+            last = top();
+            n--;
+            for (Node x = last.right; x != null; x = x.left)
+                push(x);
+            return last.key;
+        }
+
+        // the value of the key last returned by next()
+        public Value value() {
+            if (last == null) throw new IllegalStateException("next() has not been called since the last seek()");
+            return last.val;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // a Spliterator over the keys in [lo, hi]: sized, sorted, and split by
+    // rank into halves, so a parallel stream gets balanced parts
+    public Spliterator<Key> spliterator(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in spliterator()");
+        if (hi == null) throw new NullPointerException("hi is null in spliterator()");
+        return new KeySpliterator(ceiling(lo), size(lo, hi));
+    }
+
+    // the keys starting at from (the first of them), count of them
+    private class KeySpliterator implements Spliterator<Key> {
+        private Key from;
+        private int count;
+        private Cursor cursor;             // null until the first key is taken
+
+        public KeySpliterator(Key from, int count) {
+            this.from = from;
+            this.count = count;
+        }
+
+        public boolean tryAdvance(Consumer<? super Key> action) {
+            if (count == 0) return false;
+            if (cursor == null) cursor = new Cursor(from, null);
+            count--;
+            action.accept(cursor.next());
+            return true;
+        }
+
+        // hand the first half of the keys to a new spliterator
+        public Spliterator<Key> trySplit() {
+            if (cursor != null || count < 2) return null;
+            int half = count / 2;
+            KeySpliterator prefix = new KeySpliterator(from, half);
+            from = select(rank(from) + half);
+            count -= half;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return count;
+        }
+
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+
+        // keys are in their natural order
+        public Comparator<? super Key> getComparator() {
+            return null;
+        }
+    }
+
+
+    // height of this BST (one-node tree has height 0): number of levels
+    // of a level-order traversal, minus one
+    public int height() {
+        int height = -1;
+        Queue<Node> level = new Queue<Node>();
+        if (root != null) level.enqueue(root);
+        while (!level.isEmpty()) {
+            height++;
+            Queue<Node> next = new Queue<Node>();
+            for (Node x : level) {
+                if (x.left  != null) next.enqueue(x.left);
+                if (x.right != null) next.enqueue(x.right);
+            }
+            level = next;
+        }
+        return height;
     }
 
 
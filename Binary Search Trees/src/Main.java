@@ -61,6 +61,22 @@
 // - Average case: O(1.39 log n)
 // - Worst case: O(n)
 
+// * Range cursors: cursor(lo, hi) / spliterator(lo, hi)
+// - keys(lo, hi) builds a whole Queue before returning -> one queue node per key, nothing until the traversal is done
+// - A cursor does the in-order walk lazily with an explicit stack of ancestors (at most height nodes)
+// - seek(key): restart the stack on the path to ceiling(key), skipping everything before it
+// - spliterator: split a range by rank (select the middle key) -> parallel streams get equal halves
+
+// * Degenerate input: iterative operations + scapegoat rebuilds
+// - Sorted keys turn a BST into a linked list: recursive get/put hit StackOverflowError around a few thousand levels
+// - All operations in BST.java are loops now (put/delete remember the path in an array)
+// - Scapegoat tree: if put() lands deeper than log_{4/3} N, rebuild the lowest ancestor whose child holds > 3/4 of its nodes
+// - Rebuild = in-order walk into an array, then build a perfectly balanced tree from the middle outwards
+// - If deletes shrink the tree below 3/4 of its largest size, rebuild the whole tree
+
+// * Bulk build: BST.fromSorted(keys, vals)
+// - Middle key is the root, recurse on both halves -> perfectly balanced tree in O(N), no compares beyond checking the order
+
 // * ---SIDE NOTE---
 // In a BST, all operations take time proportional to the height of the tree, in the worst case.
 
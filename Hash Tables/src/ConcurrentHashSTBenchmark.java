@@ -0,0 +1,109 @@
+/*************************************************************************
+ *  Compilation:  javac ConcurrentHashSTBenchmark.java
+ *  Execution:    java ConcurrentHashSTBenchmark [keys] [millis] [reads%]
+ *  Dependencies: ConcurrentSeparateChainingHashST.java
+ *                SeparateChainingHashST.java StdOut.java
+ *
+ *  Multi-threaded throughput of ConcurrentSeparateChainingHashST against a
+ *  SeparateChainingHashST behind a single lock, for 1 to 64 threads.
+ *
+ *  Each table starts empty; every thread then runs random operations on
+ *  keys 0 to keys-1 for the given number of milliseconds: reads% of them
+ *  are get(), the rest split evenly between put() and delete(). The
+ *  first run of each table is a JIT warm-up and is not reported.
+ *  Defaults: 100000 keys, 1000 ms, 90% reads.
+ *
+ *  % java ConcurrentHashSTBenchmark 100000 1000 90
+ *  threads     synchronized     concurrent   speedup
+ *  ...
+ *
+ *************************************************************************/
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class ConcurrentHashSTBenchmark {
+    private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+    // the operations a benchmarked table supports
+    private interface Table {
+        Integer get(Integer key);
+        void put(Integer key, Integer val);
+        void delete(Integer key);
+    }
+
+    // SeparateChainingHashST with every operation under one lock
+    private static class SynchronizedTable implements Table {
+        private final SeparateChainingHashST<Integer, Integer> st = new SeparateChainingHashST<Integer, Integer>();
+        public synchronized Integer get(Integer key)          { return st.get(key); }
+        public synchronized void put(Integer key, Integer val) { st.put(key, val);   }
+        public synchronized void delete(Integer key)          { st.delete(key);     }
+    }
+
+    private static class ConcurrentTable implements Table {
+        private final ConcurrentSeparateChainingHashST<Integer, Integer> st = new ConcurrentSeparateChainingHashST<Integer, Integer>();
+        public Integer get(Integer key)          { return st.get(key); }
+        public void put(Integer key, Integer val) { st.put(key, val);   }
+        public void delete(Integer key)          { st.delete(key);     }
+    }
+
+    // run threads threads against table for millis ms; return operations per second
+    private static double run(final Table table, int threads, final int keys,
+                              final long millis, final int readPercent) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done  = new CountDownLatch(threads);
+        final long[] ops = new long[threads];
+        final long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(id);
+                    long n = 0;
+                    try {
+                        start.await();
+                        while ((n & 1023) != 0 || System.nanoTime() < deadline[0]) {
+                            Integer key = random.nextInt(keys);
+                            int op = random.nextInt(100);
+                            if      (op < readPercent)                         table.get(key);
+                            else if (op < readPercent + (100 - readPercent)/2) table.put(key, id);
+                            else                                               table.delete(key);
+                            n++;
+                        }
+                    }
+                    catch (InterruptedException e) { }
+                    ops[id] = n;
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        deadline[0] = System.nanoTime() + millis * 1000000L;
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        long total = 0;
+        for (long n : ops) total += n;
+        return total / seconds;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int keys        = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long millis     = args.length > 1 ? Long.parseLong(args[1])   : 1000;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+
+        // warm up both tables
+        run(new SynchronizedTable(), 4, keys, millis, readPercent);
+        run(new ConcurrentTable(),   4, keys, millis, readPercent);
+
+        StdOut.printf("%7s %16s %14s %9s\n", "threads", "synchronized", "concurrent", "speedup");
+        for (int threads : THREADS) {
+            double locked     = run(new SynchronizedTable(), threads, keys, millis, readPercent);
+            double concurrent = run(new ConcurrentTable(),   threads, keys, millis, readPercent);
+            StdOut.printf("%7d %16.0f %14.0f %8.2fx\n", threads, locked, concurrent, concurrent / locked);
+        }
+    }
+}
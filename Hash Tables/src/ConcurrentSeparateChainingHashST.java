@@ -0,0 +1,287 @@
+/*************************************************************************
+ *  Compilation:  javac ConcurrentSeparateChainingHashST.java
+ *  Execution:    java ConcurrentSeparateChainingHashST
+ *  Dependencies: StdIn.java StdOut.java Queue.java
+ *
+ *  A thread-safe symbol table implemented with a separate-chaining hash
+ *  table.
+ *
+ *  - Writers (put, delete) lock one of STRIPES locks, chosen by the low
+ *    bits of the hash. The number of chains is a power of two >= STRIPES,
+ *    so a stripe covers the same keys however often the table doubles.
+ *  - Readers (get, contains) never lock. A chain is a list of nodes whose
+ *    key and next link are final; writers publish a new list head with a
+ *    volatile array write, and a value update is a volatile write to the
+ *    node, so a reader always sees a complete chain.
+ *  - Resizing is cooperative: the writer that finds its stripe too full
+ *    allocates the next table, and every writer afterwards moves one
+ *    stripe's worth of chains across (under that stripe's lock),
+ *    replacing each old chain with a FORWARD marker that sends readers
+ *    and writers on to the next table.
+ *
+ *  The table grows but never shrinks. size() and keys() are weakly
+ *  consistent: they reflect some, but not necessarily all, of the
+ *  updates made while they run.
+ *
+ *  % java ConcurrentSeparateChainingHashST < tinyST.txt
+ *
+ *************************************************************************/
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ConcurrentSeparateChainingHashST<Key, Value> {
+    private static final int STRIPES = 64;            // number of writer locks (a power of two)
+    private static final int PAD = 16;                // ints between two stripe counters
+    private static final double DEFAULT_MAX_LOAD = 10.0;
+
+    private final Object[] locks;                     // locks[s] guards every chain i with i % STRIPES == s
+    private final AtomicIntegerArray counts;          // number of keys in stripe s at counts[s*PAD]
+    private final double maxLoad;                     // grow when a stripe's average list length reaches this
+    private volatile Table<Key, Value> table;         // the current table
+
+    // chain node: only val may change after the node is published
+    private static class Node<Key, Value> {
+        private final int hash;
+        private final Key key;
+        private volatile Value val;
+        private final Node<Key, Value> next;
+
+        public Node(int hash, Key key, Value val, Node<Key, Value> next) {
+            this.hash = hash;
+            this.key  = key;
+            this.val  = val;
+            this.next = next;
+        }
+    }
+
+    // marks a chain that has been moved to the next table
+    @SuppressWarnings("rawtypes")
+    private static final Node FORWARD = new Node<Object, Object>(0, null, null, null);
+
+    // array of chains, with a link to the table it is being moved into
+    private static class Table<Key, Value> {
+        private final AtomicReferenceArray<Node<Key, Value>> chains;
+        private final int M;                                // number of chains
+        private volatile Table<Key, Value> next;            // null unless a resize has started
+        private final AtomicInteger claimed = new AtomicInteger();   // stripes handed out for moving
+        private final AtomicInteger moved   = new AtomicInteger();   // stripes finished moving
+
+        public Table(int M) {
+            this.M = M;
+            this.chains = new AtomicReferenceArray<Node<Key, Value>>(M);
+        }
+    }
+
+
+    // create an empty concurrent hash table
+    public ConcurrentSeparateChainingHashST() {
+        this(STRIPES, DEFAULT_MAX_LOAD);
+    }
+
+    // create a concurrent hash table whose average list length stays below
+    // maxLoad and that can hold expectedSize keys without resizing
+    public ConcurrentSeparateChainingHashST(int expectedSize, double maxLoad) {
+        if (!(maxLoad > 0.0))
+            throw new IllegalArgumentException("maxLoad must be positive: " + maxLoad);
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("expected size is negative: " + expectedSize);
+        this.maxLoad = maxLoad;
+        int chains = STRIPES;
+        while (chains < (1 << 30) && chains * maxLoad <= expectedSize) chains <<= 1;
+        table  = new Table<Key, Value>(chains);
+        locks  = new Object[STRIPES];
+        for (int s = 0; s < STRIPES; s++)
+            locks[s] = new Object();
+        counts = new AtomicIntegerArray(STRIPES * PAD);
+    }
+
+    // MurmurHash3 32-bit finalizer: every bit of h affects the low bits
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // return number of key-value pairs in symbol table
+    public int size() {
+        int n = 0;
+        for (int s = 0; s < STRIPES; s++)
+            n += counts.get(s * PAD);
+        return n;
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // is the key in the symbol table?
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+    // return value associated with key, null if no such key; never blocks
+    public Value get(Key key) {
+        if (key == null) throw new NullPointerException("called get() with null key");
+        int h = mix(key.hashCode());
+        Table<Key, Value> t = table;
+        Node<Key, Value> x = t.chains.get(h & (t.M - 1));
+        while (x == FORWARD) {
+            t = t.next;
+            x = t.chains.get(h & (t.M - 1));
+        }
+        for (; x != null; x = x.next)
+            if (x.hash == h && key.equals(x.key)) return x.val;
+        return null;
+    }
+
+    // insert key-value pair into the table
+    public void put(Key key, Value val) {
+        if (key == null) throw new NullPointerException("called put() with null key");
+        if (val == null) { delete(key); return; }
+
+        int h = mix(key.hashCode());
+        int s = h & (STRIPES - 1);
+        Table<Key, Value> t;
+        boolean added = false;
+        synchronized (locks[s]) {
+            t = table;
+            int i = h & (t.M - 1);
+            Node<Key, Value> head = t.chains.get(i);
+            while (head == FORWARD) {
+                t = t.next;
+                i = h & (t.M - 1);
+                head = t.chains.get(i);
+            }
+
+            Node<Key, Value> x;
+            for (x = head; x != null; x = x.next)
+                if (x.hash == h && key.equals(x.key)) break;
+            if (x != null) x.val = val;
+            else {
+                t.chains.set(i, new Node<Key, Value>(h, key, val, head));
+                counts.incrementAndGet(s * PAD);
+                added = true;
+            }
+        }
+
+        // double the table if this stripe's average list length >= maxLoad
+        if (added && counts.get(s * PAD) >= maxLoad * (t.M / STRIPES)) startResize(t);
+        helpResize();
+    }
+
+    // delete key (and associated value) if key is in the table
+    public void delete(Key key) {
+        if (key == null) throw new NullPointerException("called delete() with null key");
+
+        int h = mix(key.hashCode());
+        int s = h & (STRIPES - 1);
+        synchronized (locks[s]) {
+            Table<Key, Value> t = table;
+            int i = h & (t.M - 1);
+            Node<Key, Value> head = t.chains.get(i);
+            while (head == FORWARD) {
+                t = t.next;
+                i = h & (t.M - 1);
+                head = t.chains.get(i);
+            }
+
+            Node<Key, Value> x;
+            for (x = head; x != null; x = x.next)
+                if (x.hash == h && key.equals(x.key)) break;
+            if (x != null) {
+                // nodes are immutable, so copy the part of the chain in front of x
+                Node<Key, Value> rest = x.next;
+                for (Node<Key, Value> y = head; y != x; y = y.next)
+                    rest = new Node<Key, Value>(y.hash, y.key, y.val, rest);
+                t.chains.set(i, rest);
+                counts.decrementAndGet(s * PAD);
+            }
+        }
+        helpResize();
+    }
+
+   /***********************************************************************
+    *  Cooperative resizing.
+    ***********************************************************************/
+
+    // allocate the table that t is to be moved into, unless that already happened
+    private synchronized void startResize(Table<Key, Value> t) {
+        if (t != table || t.next != null || t.M >= (1 << 30)) return;
+        t.next = new Table<Key, Value>(2 * t.M);
+    }
+
+    // if a resize is in progress, move the chains of one stripe to the next table
+    private void helpResize() {
+        Table<Key, Value> t = table;
+        Table<Key, Value> next = t.next;
+        if (next == null) return;
+
+        int s = t.claimed.getAndIncrement();
+        if (s >= STRIPES) return;
+        synchronized (locks[s]) {
+            for (int i = s; i < t.M; i += STRIPES)
+                moveChain(t, next, i);
+        }
+
+        // the last stripe to finish makes the next table current
+        if (t.moved.incrementAndGet() == STRIPES) table = next;
+    }
+
+    // split chain i of t between chains i and i + t.M of next, then forward
+    // readers of chain i to next; caller holds the stripe lock for i
+    @SuppressWarnings("unchecked")
+    private void moveChain(Table<Key, Value> t, Table<Key, Value> next, int i) {
+        Node<Key, Value> lo = null, hi = null;
+        for (Node<Key, Value> x = t.chains.get(i); x != null; x = x.next) {
+            if ((x.hash & t.M) == 0) lo = new Node<Key, Value>(x.hash, x.key, x.val, lo);
+            else                     hi = new Node<Key, Value>(x.hash, x.key, x.val, hi);
+        }
+        next.chains.set(i, lo);
+        next.chains.set(i + t.M, hi);
+        t.chains.set(i, (Node<Key, Value>) FORWARD);
+    }
+
+    // return keys in symbol table as an Iterable (weakly consistent)
+    public Iterable<Key> keys() {
+        Queue<Key> queue = new Queue<Key>();
+        keys(table, queue, 0, 1);
+        return queue;
+    }
+
+    // add the keys of every chain i of t with i == first (mod step) to the queue,
+    // following chains that have been moved to the next table
+    private void keys(Table<Key, Value> t, Queue<Key> queue, int first, int step) {
+        for (int i = first; i < t.M; i += step) {
+            Node<Key, Value> x = t.chains.get(i);
+            if (x == FORWARD) {
+                // chain i of t went to chains i and i + t.M of the next table
+                keys(t.next, queue, i, t.M);
+                continue;
+            }
+            for (; x != null; x = x.next)
+                queue.enqueue(x.key);
+        }
+    }
+
+
+   /***********************************************************************
+    *  Unit test client.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        ConcurrentSeparateChainingHashST<String, Integer> st = new ConcurrentSeparateChainingHashST<String, Integer>();
+        for (int i = 0; !StdIn.isEmpty(); i++) {
+            String key = StdIn.readString();
+            st.put(key, i);
+        }
+
+        // print keys
+        for (String s : st.keys())
+            StdOut.println(s + " " + st.get(s));
+    }
+}
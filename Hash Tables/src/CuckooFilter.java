@@ -0,0 +1,225 @@
+/*************************************************************************
+ *  Compilation:  javac CuckooFilter.java
+ *  Execution:    java CuckooFilter n
+ *  Dependencies: StdOut.java
+ *
+ *  A cuckoo filter (Fan, Andersen, Kaminsky and Mitzenmacher): an
+ *  approximate set of 32-bit hashes that answers "definitely not there"
+ *  or "maybe there", and, unlike a Bloom filter, supports delete().
+ *
+ *  Each hash is stored as a 16-bit fingerprint in one of two buckets of
+ *  four slots; a bucket is one long, so a lookup reads two longs (at most
+ *  two cache lines). The second bucket is the first one xor a hash of the
+ *  fingerprint, so a fingerprint can be moved between its two buckets
+ *  without knowing the key it came from. add() kicks fingerprints to
+ *  their other bucket until one finds a free slot.
+ *
+ *  The same hash can be added several times (a multiset, so delete()
+ *  removes one copy). A fingerprint that finds no room, because its two
+ *  buckets are full of copies of it or because MAX_KICKS moves did not
+ *  free a slot, goes to a stash that lookups check as well; a filter much
+ *  above 90% load should be rebuilt with more buckets instead.
+ *
+ *  With a fraction load of the slots in use, a hash that was never added
+ *  is reported as "maybe there" with probability about 8 * load / 2^16
+ *  (two buckets of four slots, one chance in 2^16 each).
+ *
+ *  % java CuckooFilter 1000000
+ *  1000000 hashes in 524288 buckets (load 0.48): expected fpp 0.000058, measured 0.000064
+ *
+ *************************************************************************/
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+public class CuckooFilter {
+    private static final int SLOTS = 4;           // fingerprints per bucket (one long)
+    private static final int MAX_KICKS = 500;     // give up add() after this many moves
+
+    private final long[] buckets;                 // 4 x 16-bit fingerprints per bucket, 0 = empty slot
+    private final int mask;                       // number of buckets - 1
+    private int N;                                // number of fingerprints stored
+    private long seed = 0x9E3779B97F4A7C15L;      // xorshift state for picking victims
+    private HashMap<Long, Integer> stash;         // (bucket, fingerprint) -> copies that found no slot
+    private int stashed;                          // number of fingerprints in the stash
+
+    // an empty filter with room for about capacity hashes
+    public CuckooFilter(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity is negative: " + capacity);
+        int b = 1;
+        while (b * SLOTS < capacity) b <<= 1;
+        buckets = new long[b];
+        mask = b - 1;
+    }
+
+    // number of hashes in the filter
+    public int size() {
+        return N;
+    }
+
+    // number of slots
+    public int capacity() {
+        return buckets.length * SLOTS;
+    }
+
+    // fraction of the slots in use
+    public double loadFactor() {
+        return (double) (N - stashed) / capacity();
+    }
+
+    // number of fingerprints that did not fit in the buckets
+    public int stashSize() {
+        return stashed;
+    }
+
+    // probability that a hash that was never added is reported as maybe there
+    public double expectedFpp() {
+        return 1.0 - Math.pow(1.0 - 1.0 / 65535, 2.0 * SLOTS * loadFactor());
+    }
+
+    // bytes used by the bucket array and the stash
+    public long footprint() {
+        return 16 + 8L * buckets.length + (stash == null ? 0 : 64L * stash.size());
+    }
+
+    // spread the 32 bits of h over 64 (SplitMix64 finalizer): the bucket
+    // comes from the low bits and the fingerprint from the high bits
+    private static long spread(int h) {
+        long x = h * 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+
+    // nonzero 16-bit fingerprint
+    private static int fingerprint(long x) {
+        int fp = (int) (x >>> 48);
+        return fp == 0 ? 1 : fp;
+    }
+
+    // the other bucket of fingerprint fp, which is in bucket i
+    private int alternate(int i, int fp) {
+        return (i ^ (fp * 0x5bd1e995)) & mask;
+    }
+
+    // slot of bucket i holding fp, -1 if none
+    private int find(int i, int fp) {
+        long w = buckets[i];
+        for (int s = 0; s < SLOTS; s++)
+            if ((int) (w >>> (16*s) & 0xFFFF) == fp) return s;
+        return -1;
+    }
+
+    // number of slots of bucket i holding fp
+    private int count(int i, int fp) {
+        long w = buckets[i];
+        int c = 0;
+        for (int s = 0; s < SLOTS; s++)
+            if ((int) (w >>> (16*s) & 0xFFFF) == fp) c++;
+        return c;
+    }
+
+    // store fp in a free slot of bucket i; return false if the bucket is full
+    private boolean insert(int i, int fp) {
+        int s = find(i, 0);
+        if (s < 0) return false;
+        buckets[i] |= (long) fp << (16*s);
+        return true;
+    }
+
+    // stash key of fingerprint fp in bucket i: the same for both of its buckets
+    private long stashKey(int i, int fp) {
+        return (long) Math.min(i, alternate(i, fp)) << 16 | fp;
+    }
+
+    // might h have been added (and not deleted)?
+    public boolean mightContain(int h) {
+        long x = spread(h);
+        int fp = fingerprint(x);
+        int i = (int) x & mask;
+        if (find(i, fp) >= 0 || find(alternate(i, fp), fp) >= 0) return true;
+        return stash != null && stash.containsKey(stashKey(i, fp));
+    }
+
+    // add (a copy of) h
+    public void add(int h) {
+        long x = spread(h);
+        int fp = fingerprint(x);
+        int i = (int) x & mask;
+        int j = alternate(i, fp);
+        N++;
+        if (insert(i, fp) || insert(j, fp)) return;
+
+        // both buckets full: kicking copies of fp around cannot help if they
+        // take up half the slots already
+        if (count(i, fp) + count(j, fp) < SLOTS) {
+
+            // evict a random fingerprint to its other bucket, and repeat
+            for (int k = 0; k < MAX_KICKS; k++) {
+                seed ^= seed << 13; seed ^= seed >>> 7; seed ^= seed << 17;
+                int s = (int) (seed & (SLOTS - 1));
+                int victim = (int) (buckets[i] >>> (16*s) & 0xFFFF);
+                buckets[i] ^= (long) (victim ^ fp) << (16*s);
+                fp = victim;
+                i = alternate(i, fp);
+                if (insert(i, fp)) return;
+            }
+        }
+
+        if (stash == null) stash = new HashMap<Long, Integer>();
+        stash.merge(stashKey(i, fp), 1, Integer::sum);
+        stashed++;
+    }
+
+    // remove one copy of h, which must have been added; return false if it was not found
+    public boolean delete(int h) {
+        long x = spread(h);
+        int fp = fingerprint(x);
+        int i = (int) x & mask;
+        int s = find(i, fp);
+        if (s < 0) {
+            i = alternate(i, fp);
+            s = find(i, fp);
+        }
+        if (s >= 0) buckets[i] &= ~(0xFFFFL << (16*s));
+        else {
+            long key = stashKey(i, fp);
+            Integer c = (stash == null) ? null : stash.get(key);
+            if (c == null) return false;
+            if (c == 1) stash.remove(key);
+            else        stash.put(key, c - 1);
+            stashed--;
+        }
+        N--;
+        return true;
+    }
+
+
+   /***********************************************************************
+    *  Test client: add n random hashes, then measure the false positive
+    *  rate on n hashes that were not added.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        Random random = new Random(42);
+        HashSet<Integer> added = new HashSet<Integer>();
+        CuckooFilter filter = new CuckooFilter(2*n);
+        while (added.size() < n) {
+            int h = random.nextInt();
+            if (added.add(h)) filter.add(h);
+        }
+        for (int h : added)
+            if (!filter.mightContain(h)) throw new IllegalStateException("false negative: " + h);
+
+        int tested = 0, positives = 0;
+        while (tested < n) {
+            int h = random.nextInt();
+            if (added.contains(h)) continue;
+            tested++;
+            if (filter.mightContain(h)) positives++;
+        }
+        StdOut.printf("%d hashes in %d buckets (load %.2f): expected fpp %.6f, measured %.6f\n",
+                      n, filter.capacity() / SLOTS, filter.loadFactor(), filter.expectedFpp(), (double) positives / tested);
+    }
+}
@@ -0,0 +1,161 @@
+/*************************************************************************
+ *  Compilation:  javac HashSTStats.java
+ *  Dependencies: Queue.java
+ *
+ *  Operation statistics of a hash table, returned by enableStats() on
+ *  LinearProbingHashST and SeparateChainingHashST. A table with stats
+ *  disabled (the default) pays one null check per operation.
+ *
+ *  - probe lengths: for every get/put/delete, the number of keys it
+ *    compared against (linear probing: slots probed; separate chaining:
+ *    length of the chain searched), as a histogram with power-of-two
+ *    buckets: bucket 0 counts 0, bucket b counts 2^(b-1) to 2^b - 1
+ *  - resizes: how many, total and longest duration, and the last
+ *    RECENT_RESIZES of them (old size, new size, nanoseconds)
+ *
+ *  Counters are LongAdders, so recording stays cheap if a table is
+ *  shared behind a lock by many threads and read by a monitoring thread.
+ *
+ *************************************************************************/
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HashSTStats {
+    private static final int BUCKETS = 33;           // 0, then one per power of two up to 2^31
+    private static final int RECENT_RESIZES = 16;
+
+    private final LongAdder[] probes = new LongAdder[BUCKETS];
+    private final LongAdder totalProbes = new LongAdder();
+    private final LongAdder resizes = new LongAdder();
+    private final LongAdder resizeNanos = new LongAdder();
+    private final LongAccumulator maxResizeNanos = new LongAccumulator(Math::max, 0);
+
+    // ring buffer of the most recent resizes: from, to, nanos
+    private final long[][] recent = new long[RECENT_RESIZES][];
+    private int nextRecent;
+
+    public HashSTStats() {
+        for (int b = 0; b < BUCKETS; b++)
+            probes[b] = new LongAdder();
+    }
+
+    // histogram bucket of a count n >= 0
+    public static int bucket(long n) {
+        return n == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(n));
+    }
+
+    // smallest count in bucket b
+    public static long bucketStart(int b) {
+        return b == 0 ? 0 : 1L << (b - 1);
+    }
+
+    // record an operation that compared against n keys
+    public void recordProbes(int n) {
+        probes[bucket(n)].increment();
+        totalProbes.add(n);
+    }
+
+    // record a resize from m to capacity that took the given time
+    public void recordResize(int m, int capacity, long nanos) {
+        resizes.increment();
+        resizeNanos.add(nanos);
+        maxResizeNanos.accumulate(nanos);
+        synchronized (recent) {
+            recent[nextRecent] = new long[] { m, capacity, nanos };
+            nextRecent = (nextRecent + 1) % RECENT_RESIZES;
+        }
+    }
+
+    // number of operations recorded
+    public long operations() {
+        long n = 0;
+        for (LongAdder a : probes) n += a.sum();
+        return n;
+    }
+
+    // average number of keys compared per operation
+    public double meanProbes() {
+        long n = operations();
+        return n == 0 ? 0.0 : (double) totalProbes.sum() / n;
+    }
+
+    // probeHistogram()[b] = number of operations in bucket b
+    public long[] probeHistogram() {
+        long[] h = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++)
+            h[b] = probes[b].sum();
+        return h;
+    }
+
+    // lower end of the histogram bucket holding the q-quantile of the probe
+    // counts (e.g. q = 0.99: 99% of operations compared against < 2x this many keys)
+    public long probePercentile(double q) {
+        long[] h = probeHistogram();
+        long n = 0;
+        for (long c : h) n += c;
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += h[b];
+            if (seen >= q * n && seen > 0) return bucketStart(b);
+        }
+        return 0;
+    }
+
+    public long resizes() {
+        return resizes.sum();
+    }
+
+    public long resizeNanos() {
+        return resizeNanos.sum();
+    }
+
+    public long maxResizeNanos() {
+        return maxResizeNanos.get();
+    }
+
+    // the most recent resizes, oldest first, as "from -> to: nanos ns"
+    public Iterable<String> recentResizes() {
+        Queue<String> queue = new Queue<String>();
+        synchronized (recent) {
+            for (int k = 0; k < RECENT_RESIZES; k++) {
+                long[] r = recent[(nextRecent + k) % RECENT_RESIZES];
+                if (r != null) queue.enqueue(r[0] + " -> " + r[1] + ": " + r[2] + " ns");
+            }
+        }
+        return queue;
+    }
+
+    // clear every counter
+    public void reset() {
+        for (LongAdder a : probes) a.reset();
+        totalProbes.reset();
+        resizes.reset();
+        resizeNanos.reset();
+        maxResizeNanos.reset();
+        synchronized (recent) {
+            for (int k = 0; k < RECENT_RESIZES; k++)
+                recent[k] = null;
+            nextRecent = 0;
+        }
+    }
+
+    // one line per non-empty histogram bucket: "lo-hi: count"
+    public static String histogramToString(long[] h) {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < h.length; b++) {
+            if (h[b] == 0) continue;
+            long lo = bucketStart(b);
+            long hi = b == 0 ? 0 : 2*lo - 1;
+            sb.append(lo == hi ? "" + lo : lo + "-" + hi).append(": ").append(h[b]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public String toString() {
+        return "operations: " + operations() + ", mean probes: " + String.format("%.2f", meanProbes())
+             + ", p99 probes: " + probePercentile(0.99) + "\n"
+             + histogramToString(probeHistogram())
+             + "resizes: " + resizes() + ", total " + resizeNanos() / 1000 + " us, max " + maxResizeNanos() / 1000 + " us";
+    }
+}
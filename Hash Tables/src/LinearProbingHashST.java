@@ -4,6 +4,36 @@
  *  
  *  Symbol table implementation with linear probing hash table.
  *
+ *  The table can optionally use Robin Hood insertion: a key being
+ *  inserted takes over any slot whose key is closer to its own hash
+ *  slot, which keeps the longest probe sequence short at high load
+ *  factors. Deletion shifts the rest of the cluster back in place
+ *  instead of re-inserting it, so no tombstones are needed.
+ *
+ *  The table size M is always a power of two: hash() scrambles the bits
+ *  of hashCode() with the MurmurHash3 finalizer and keeps the low bits
+ *  with a mask, so there is no integer division on any operation.
+ *
+ *  With keyed hashing enabled, String keys are hashed with SipHash under
+ *  a random key drawn for each table instead of with hashCode(), so
+ *  clients that choose the keys cannot make them collide (hash flooding).
+ *
+ *  With incremental resizing enabled, resize() only allocates the new
+ *  arrays; the old table stays alive and every get/put/delete moves a
+ *  few of its clusters across, so no single operation pays for
+ *  re-hashing the whole table. Until the old table is drained, lookups
+ *  check both tables.
+ *
+ *  enableStats() turns on a HashSTStats record of probe lengths and
+ *  resizes; clusterHistogram() and footprint() describe the table itself.
+ *
+ *  putAll() and fromArrays() size the table once for the whole batch, so
+ *  loading n keys is a single pass with no doublings in between. The
+ *  threaded fromArrays() splits the keys by the top bits of their slot:
+ *  each thread fills its own contiguous range of the table, and the few
+ *  keys whose probe sequence runs past the end of their range are
+ *  inserted afterwards by the calling thread.
+ *
  *  % java LinearProbingHashST
  *  128.112.136.11
  *  208.216.181.15
@@ -15,23 +45,94 @@
 
 public class LinearProbingHashST<Key, Value> {
     private static final int INIT_CAPACITY = 4;
+    private static final double DEFAULT_MAX_LOAD = 0.5;
+    private static final int REHASH_STEP = 8;   // old slots moved per operation while resizing
 
     private int N;           // number of key-value pairs in the symbol table
     private int M;           // size of linear probing table
     private Key[] keys;      // the keys
     private Value[] vals;    // the values
 
+    private final double maxLoad;     // double the table before N/M exceeds this
+    private final boolean robinHood;  // use Robin Hood insertion?
+    private final boolean incremental; // resize a few clusters per operation?
+    private final boolean keyedHash;  // SipHash String keys?
+    private final long k0, k1;        // this table's SipHash key
+
+    // table being drained into keys[] and vals[] by an incremental resize
+    private Key[] oldKeys;   // null if no resize is in progress
+    private Value[] oldVals;
+    private int oldN;        // number of keys still in oldKeys[]
+    private int cursor;      // next slot of oldKeys[] to move
+    private int slotsLeft;   // slots of oldKeys[] not yet visited
+
+    private HashSTStats stats;  // null unless enableStats() was called
+    private int lastProbes;     // keys compared by the last indexOf()
+
 
     // create an empty hash table - use 16 as default size
     public LinearProbingHashST() {
         this(INIT_CAPACITY);
     }
 
-    // create linear proving hash table of given capacity
+    // create linear proving hash table of given capacity (rounded up to a power of two)
     public LinearProbingHashST(int capacity) {
-        M = capacity;
+        this(DEFAULT_MAX_LOAD, false, false, false, capacity);
+    }
+
+    // create linear probing hash table that is kept at most maxLoad full and
+    // can hold expectedSize keys without resizing
+    public LinearProbingHashST(int expectedSize, double maxLoad) {
+        this(expectedSize, maxLoad, false);
+    }
+
+    // create linear probing hash table that is kept at most maxLoad full and
+    // can hold expectedSize keys without resizing, using Robin Hood insertion
+    // if robinHood is set
+    public LinearProbingHashST(int expectedSize, double maxLoad, boolean robinHood) {
+        this(expectedSize, maxLoad, robinHood, false);
+    }
+
+    // as above, moving keys to the new table a few clusters per operation
+    // when resizing if incremental is set
+    public LinearProbingHashST(int expectedSize, double maxLoad, boolean robinHood, boolean incremental) {
+        this(expectedSize, maxLoad, robinHood, incremental, false);
+    }
+
+    // as above, hashing String keys with SipHash under a random per-table key
+    // if keyedHash is set
+    public LinearProbingHashST(int expectedSize, double maxLoad, boolean robinHood, boolean incremental,
+                               boolean keyedHash) {
+        this(maxLoad, robinHood, incremental, keyedHash, capacityFor(expectedSize, maxLoad));
+    }
+
+    private LinearProbingHashST(double maxLoad, boolean robinHood, boolean incremental, boolean keyedHash,
+                                int capacity) {
+        if (!(maxLoad > 0.0 && maxLoad < 1.0))
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1: " + maxLoad);
+        M = powerOfTwoAtLeast(capacity);
         keys = (Key[])   new Object[M];
         vals = (Value[]) new Object[M];
+        this.maxLoad = maxLoad;
+        this.robinHood = robinHood;
+        this.incremental = incremental;
+        this.keyedHash = keyedHash;
+        this.k0 = keyedHash ? SipHash.randomKey() : 0;
+        this.k1 = keyedHash ? SipHash.randomKey() : 0;
+    }
+
+    // smallest power of two >= n (and >= 2)
+    private static int powerOfTwoAtLeast(int n) {
+        if (n > (1 << 30)) throw new IllegalArgumentException("capacity too large: " + n);
+        int m = 2;
+        while (m < n) m <<= 1;
+        return m;
+    }
+
+    // table size needed to hold n keys while staying at most maxLoad full
+    private static int capacityFor(int n, double maxLoad) {
+        if (n < 0) throw new IllegalArgumentException("expected size is negative: " + n);
+        return Math.max(INIT_CAPACITY, (int) Math.ceil((n + 1) / maxLoad));
     }
 
     // return the number of key-value pairs in the symbol table
@@ -49,81 +150,458 @@ public class LinearProbingHashST<Key, Value> {
         return get(key) != null;
     }
 
-    // hash function for keys - returns value between 0 and M-1
-    private int hash(Key key) {
-        return (key.hashCode() & 0x7fffffff) % M;
+    // hash function for keys - returns value between 0 and m-1 (m a power of two);
+    // in keyed mode a String key is hashed with SipHash instead of hashCode()
+    private int hash(Key key, int m) {
+        if (keyedHash && key instanceof String) return (int) SipHash.hash(k0, k1, (String) key) & (m - 1);
+        return mix(key.hashCode()) & (m - 1);
+    }
+
+    // MurmurHash3 32-bit finalizer: every bit of h affects the low bits
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    // distance of the key in slot i of ks[] from its hash slot
+    private int displacement(Key[] ks, int i) {
+        return (i - hash(ks[i], ks.length)) & (ks.length - 1);
     }
 
     // resize the hash table to the given capacity by re-hashing all of the keys
+    // (or, in incremental mode, start moving them a few clusters per operation)
+    @SuppressWarnings("unchecked")
     private void resize(int capacity) {
-        LinearProbingHashST<Key, Value> temp = new LinearProbingHashST<Key, Value>(capacity);
-        for (int i = 0; i < M; i++) {
-            if (keys[i] != null) {
-                temp.put(keys[i], vals[i]);
+        long start = (stats == null) ? 0 : System.nanoTime();
+        if (oldKeys != null) finishResize();
+
+        Key[]   ks = keys;
+        Value[] vs = vals;
+        M    = capacity;
+        keys = (Key[])   new Object[M];
+        vals = (Value[]) new Object[M];
+
+        if (incremental && N > 0) {
+            oldKeys = ks;
+            oldVals = vs;
+            oldN = N;
+            slotsLeft = ks.length;
+
+            // start at an empty slot so that only whole clusters are ever moved
+            cursor = 0;
+            while (ks[cursor] != null) cursor++;
+        }
+        else {
+            for (int i = 0; i < ks.length; i++)
+                if (ks[i] != null) place(ks[i], vs[i]);
+        }
+        if (stats != null) stats.recordResize(ks.length, M, System.nanoTime() - start);
+    }
+
+    // move at least REHASH_STEP slots of the old table, stopping only in front
+    // of an empty slot so that the clusters left behind stay intact
+    private void resizeStep() {
+        int mask = oldKeys.length - 1;
+        for (int moved = 0; slotsLeft > 0; moved++) {
+            if (moved >= REHASH_STEP && oldKeys[cursor] == null) break;
+            if (oldKeys[cursor] != null) {
+                place(oldKeys[cursor], oldVals[cursor]);
+                oldKeys[cursor] = null;
+                oldVals[cursor] = null;
+                oldN--;
             }
+            cursor = (cursor + 1) & mask;
+            slotsLeft--;
+        }
+        if (slotsLeft == 0 || oldN == 0) {
+            oldKeys = null;
+            oldVals = null;
         }
-        keys = temp.keys;
-        vals = temp.vals;
-        M    = temp.M;
+    }
+
+    // move everything that is left in the old table
+    private void finishResize() {
+        while (oldKeys != null) resizeStep();
+    }
+
+    // place a key known not to be in the table
+    private void place(Key key, Value val) {
+        if (robinHood) { putRobinHood(key, val); return; }
+        int i;
+        for (i = hash(key, M); keys[i] != null; i = (i + 1) & (M - 1)) { }
+        keys[i] = key;
+        vals[i] = val;
     }
 
     // insert the key-value pair into the symbol table
     public void put(Key key, Value val) {
-        if (val == null) delete(key);
+        if (val == null) { delete(key); return; }
+
+        // double table size if one more key would make it more than maxLoad full
+        if (N + 1 > maxLoad * M) resize(2*M);
+
+        // keys still waiting in the old table are updated where they are
+        if (oldKeys != null) resizeStep();
+        if (oldKeys != null) {
+            int j = indexOf(oldKeys, key);
+            if (j != -1) { oldVals[j] = val; return; }
+        }
 
-        // double table size if 50% full
-        if (N >= M/2) resize(2*M);
+        if (robinHood) {
+            if (putRobinHood(key, val)) N++;
+            return;
+        }
 
+        int h = hash(key, M);
         int i;
-        for (i = hash(key); keys[i] != null; i = (i + 1) % M) {
-            if (keys[i].equals(key)) { vals[i] = val; return; }
+        for (i = h; keys[i] != null; i = (i + 1) & (M - 1)) {
+            if (keys[i].equals(key)) {
+                if (stats != null) stats.recordProbes(((i - h) & (M - 1)) + 1);
+                vals[i] = val;
+                return;
+            }
         }
+        if (stats != null) stats.recordProbes((i - h) & (M - 1));
         keys[i] = key;
         vals[i] = val;
         N++;
     }
 
+    // insert the key-value pair, taking over the slot of any key that is closer
+    // to its hash slot than the key being inserted (and carrying on with that key);
+    // returns true if the key was not already in the table
+    private boolean putRobinHood(Key key, Value val) {
+        int h = hash(key, M);
+        int i;
+        int dist = 0;
+        for (i = h; keys[i] != null; i = (i + 1) & (M - 1), dist++) {
+            if (keys[i].equals(key)) {
+                if (stats != null) stats.recordProbes(((i - h) & (M - 1)) + 1);
+                vals[i] = val;
+                return false;
+            }
+            int d = displacement(keys, i);
+            if (d < dist) {
+                Key   k = keys[i];
+                Value v = vals[i];
+                keys[i] = key;
+                vals[i] = val;
+                key  = k;
+                val  = v;
+                dist = d;
+            }
+        }
+        if (stats != null) stats.recordProbes((i - h) & (M - 1));
+        keys[i] = key;
+        vals[i] = val;
+        return true;
+    }
+
     // return the value associated with the given key, null if no such value
     public Value get(Key key) {
-        for (int i = hash(key); keys[i] != null; i = (i + 1) % M) 
-            if (keys[i].equals(key))
-                return vals[i];
+        if (oldKeys != null) resizeStep();
+        int i = indexOf(keys, key);
+        if (stats != null) stats.recordProbes(lastProbes);
+        if (i != -1) return vals[i];
+        if (oldKeys != null) {
+            int j = indexOf(oldKeys, key);
+            if (j != -1) return oldVals[j];
+        }
         return null;
     }
 
+    // return the slot of ks[] holding the given key, -1 if no such key;
+    // sets lastProbes to the number of keys compared
+    private int indexOf(Key[] ks, Key key) {
+        int mask = ks.length - 1;
+        int dist = 0;
+        for (int i = hash(key, ks.length); ks[i] != null; i = (i + 1) & mask, dist++) {
+            if (ks[i].equals(key)) {
+                lastProbes = dist + 1;
+                return i;
+            }
+
+            // a Robin Hood table would have placed key before any richer key
+            if (robinHood && displacement(ks, i) < dist) {
+                lastProbes = dist + 1;
+                return -1;
+            }
+        }
+        lastProbes = dist;
+        return -1;
+    }
+
     // delete the key (and associated value) from the symbol table
     public void delete(Key key) {
-        if (!contains(key)) return;
+        if (oldKeys != null) resizeStep();
 
-        // find position i of key
-        int i = hash(key);
-        while (!key.equals(keys[i])) {
-            i = (i + 1) % M;
+        // find position i of key, in the new table or else the old one
+        int i = indexOf(keys, key);
+        if (stats != null) stats.recordProbes(lastProbes);
+        if (i != -1) {
+            remove(keys, vals, i);
         }
+        else if (oldKeys != null && (i = indexOf(oldKeys, key)) != -1) {
+            remove(oldKeys, oldVals, i);
+            if (--oldN == 0) { oldKeys = null; oldVals = null; }
+        }
+        else return;
+
+        N--;
+
+        // halves size of array if it's a quarter of maxLoad full or less
+        // (12.5% for the default 0.5), so the halved table is at most half
+        // of maxLoad full
+        if (oldKeys == null && N > 0 && N <= maxLoad * M / 4) resize(M/2);
+
+        assert check();
+    }
+
+    // delete the key in slot i of ks[], shifting the rest of the cluster back
+    private void remove(Key[] ks, Value[] vs, int i) {
+        if (robinHood) i = shiftBackRobinHood(ks, vs, i);
+        else           i = shiftBack(ks, vs, i);
 
         // delete key and associated value
-        keys[i] = null;
-        vals[i] = null;
+        ks[i] = null;
+        vs[i] = null;
+    }
+
+    // move keys after the hole at slot i back into it when doing so keeps them
+    // reachable from their hash slot (Knuth's Algorithm R); returns the final hole
+    private int shiftBack(Key[] ks, Value[] vs, int i) {
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask; ks[j] != null; j = (j + 1) & mask) {
+            int h = hash(ks[j], ks.length);
 
-        // rehash all keys in same cluster
-        i = (i + 1) % M;
-        while (keys[i] != null) {
-            // delete keys[i] an vals[i] and reinsert
-            Key   keyToRehash = keys[i];
-            Value valToRehash = vals[i];
-            keys[i] = null;
-            vals[i] = null;
-            N--;  
-            put(keyToRehash, valToRehash);
-            i = (i + 1) % M;
+            // key at j stays put if its hash slot lies cyclically in (i, j]
+            if (i <= j ? (i < h && h <= j) : (i < h || h <= j)) continue;
+
+            ks[i] = ks[j];
+            vs[i] = vs[j];
+            i = j;
+        }
+        return i;
+    }
+
+    // in a Robin Hood table the keys that must move are exactly the ones that
+    // follow the hole and are not in their hash slot; returns the final hole
+    private int shiftBackRobinHood(Key[] ks, Value[] vs, int i) {
+        int mask = ks.length - 1;
+        for (int j = (i + 1) & mask; ks[j] != null && displacement(ks, j) > 0; j = (j + 1) & mask) {
+            ks[i] = ks[j];
+            vs[i] = vs[j];
+            i = j;
         }
+        return i;
+    }
 
-        N--;        
+   /***********************************************************************
+    *  Bulk loading.
+    ***********************************************************************/
 
-        // halves size of array if it's 12.5% full or less
-        if (N > 0 && N <= M/8) resize(M/2);
+    // grow the table (at most once) so that it can hold expectedSize keys
+    // in total without resizing again
+    public void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize, maxLoad);
+        if (capacity <= M) return;
+        resize(powerOfTwoAtLeast(capacity));
+        finishResize();
+    }
 
-        assert check();
+    // insert the pairs ks[i], vs[i] in order (a later duplicate key wins and a
+    // null value deletes, as in put()), resizing at most once up front
+    public void putAll(Key[] ks, Value[] vs) {
+        if (ks.length != vs.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + ks.length + " != " + vs.length);
+        ensureCapacity(N + ks.length);
+        for (int i = 0; i < ks.length; i++)
+            put(ks[i], vs[i]);
+    }
+
+    // build a table holding the pairs ks[i], vs[i], sized once for all of them
+    public static <Key, Value> LinearProbingHashST<Key, Value> fromArrays(Key[] ks, Value[] vs) {
+        return fromArrays(ks, vs, DEFAULT_MAX_LOAD);
+    }
+
+    // as above, keeping the table at most maxLoad full
+    public static <Key, Value> LinearProbingHashST<Key, Value> fromArrays(Key[] ks, Value[] vs, double maxLoad) {
+        LinearProbingHashST<Key, Value> st = new LinearProbingHashST<Key, Value>(ks.length, maxLoad);
+        st.putAll(ks, vs);
+        return st;
+    }
+
+    // build the table with the given number of threads (rounded down to a power
+    // of two); the values must not be null, and the table is a plain linear
+    // probing table (no Robin Hood, no incremental resizing)
+    public static <Key, Value> LinearProbingHashST<Key, Value> fromArrays(final Key[] ks, final Value[] vs,
+                                                                          double maxLoad, int threads) {
+        if (ks.length != vs.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + ks.length + " != " + vs.length);
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+
+        final LinearProbingHashST<Key, Value> st = new LinearProbingHashST<Key, Value>(ks.length, maxLoad);
+        final int n = ks.length;
+        int p = 1;
+        while (2*p <= threads && 2*p <= st.M) p *= 2;
+        final int parts = p;
+        final int shift = Integer.numberOfTrailingZeros(st.M / parts);   // part of slot i is i >>> shift
+
+        // hash slot of every key, computed in parallel over chunks of the input
+        final int[] slots = new int[n];
+        inParallel(parts, new Part() {
+            public void run(int part) {
+                for (int i = (int) ((long) n * part / parts); i < (long) n * (part + 1) / parts; i++) {
+                    if (vs[i] == null) throw new IllegalArgumentException("null value at index " + i);
+                    slots[i] = st.hash(ks[i], st.M);
+                }
+            }
+        });
+
+        // counting sort of the key indices by part: part q gets order[start[q]..start[q+1]-1]
+        final int[] start = new int[parts + 1];
+        for (int i = 0; i < n; i++)
+            start[(slots[i] >>> shift) + 1]++;
+        for (int q = 0; q < parts; q++)
+            start[q + 1] += start[q];
+        final int[] order = new int[n];
+        int[] next = start.clone();
+        for (int i = 0; i < n; i++)
+            order[next[slots[i] >>> shift]++] = i;
+
+        // part q inserts its keys into slots [q << shift, (q+1) << shift) only;
+        // keys that run off the end are moved to the front of its slice of order[]
+        final int[] added   = new int[parts];
+        final int[] spilled = new int[parts];
+        inParallel(parts, new Part() {
+            public void run(int part) {
+                int end = (part + 1) << shift;
+                int spill = start[part];
+                for (int k = start[part]; k < start[part + 1]; k++) {
+                    int i = order[k];
+                    int j;
+                    for (j = slots[i]; j < end && st.keys[j] != null; j++)
+                        if (st.keys[j].equals(ks[i])) break;
+                    if (j == end) { order[spill++] = i; continue; }
+                    if (st.keys[j] == null) { st.keys[j] = ks[i]; added[part]++; }
+                    st.vals[j] = vs[i];
+                }
+                spilled[part] = spill - start[part];
+            }
+        });
+
+        // the spilled keys carry on probing past their part, one at a time;
+        // duplicates of a key always land in the same part, so the last one still wins
+        for (int q = 0; q < parts; q++)
+            st.N += added[q];
+        for (int q = 0; q < parts; q++)
+            for (int k = start[q]; k < start[q] + spilled[q]; k++)
+                st.put(ks[order[k]], vs[order[k]]);
+        assert st.check();
+        return st;
+    }
+
+    // one part of a parallel bulk build
+    private interface Part {
+        void run(int part);
+    }
+
+    // run task.run(0) to task.run(parts-1) on separate threads and wait for all of them
+    private static void inParallel(int parts, final Part task) {
+        Thread[] threads = new Thread[parts];
+        final RuntimeException[] failure = new RuntimeException[1];
+        for (int q = 0; q < parts; q++) {
+            final int part = q;
+            threads[q] = new Thread(new Runnable() {
+                public void run() {
+                    try { task.run(part); }
+                    catch (RuntimeException e) { synchronized (failure) { failure[0] = e; } }
+                }
+            });
+            threads[q].start();
+        }
+        try {
+            for (Thread t : threads) t.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted during parallel build", e);
+        }
+        if (failure[0] != null) throw failure[0];
+    }
+
+   /***********************************************************************
+    *  Probe-length statistics.
+    ***********************************************************************/
+
+    // largest distance of any key from its hash slot; a search hit for
+    // that key costs maxDisplacement() + 1 probes
+    public int maxDisplacement() {
+        int max = 0;
+        for (int i = 0; i < M; i++)
+            if (keys[i] != null) max = Math.max(max, displacement(keys, i));
+        if (oldKeys != null)
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldKeys[i] != null) max = Math.max(max, displacement(oldKeys, i));
+        return max;
+    }
+
+    // average distance of a key from its hash slot
+    public double meanDisplacement() {
+        if (isEmpty()) return 0.0;
+        long sum = 0;
+        for (int i = 0; i < M; i++)
+            if (keys[i] != null) sum += displacement(keys, i);
+        if (oldKeys != null)
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldKeys[i] != null) sum += displacement(oldKeys, i);
+        return (double) sum / N;
+    }
+
+    // fraction of the table in use
+    public double loadFactor() {
+        return (double) N / M;
+    }
+
+    // clusterHistogram()[b] = number of clusters (maximal runs of used slots) whose
+    // length falls in HashSTStats bucket b; a search miss scans to the end of one
+    public long[] clusterHistogram() {
+        long[] h = new long[HashSTStats.bucket(M) + 1];
+        int start = 0;
+        while (start < M && keys[start] != null) start++;
+        if (start == M) { h[HashSTStats.bucket(M)]++; return h; }
+
+        // walk once around the table from an empty slot, so no cluster is split
+        int run = 0;
+        for (int k = 1; k <= M; k++) {
+            int i = (start + k) & (M - 1);
+            if (keys[i] != null) run++;
+            else if (run > 0) { h[HashSTStats.bucket(run)]++; run = 0; }
+        }
+        return h;
+    }
+
+    // estimated bytes used by the table's arrays (compressed references, 16-byte
+    // array headers), not counting the keys and values themselves
+    public long footprint() {
+        long bytes = 2 * (16 + 4L * M);
+        if (oldKeys != null) bytes += 2 * (16 + 4L * oldKeys.length);
+        return bytes;
+    }
+
+    // start recording probe lengths and resizes; returns the statistics
+    public HashSTStats enableStats() {
+        if (stats == null) stats = new HashSTStats();
+        return stats;
+    }
+
+    // the statistics being recorded, null if enableStats() was never called
+    public HashSTStats stats() {
+        return stats;
     }
 
     // return all of the keys as in Iterable
@@ -131,6 +609,9 @@ public class LinearProbingHashST<Key, Value> {
         Queue<Key> queue = new Queue<Key>();
         for (int i = 0; i < M; i++)
             if (keys[i] != null) queue.enqueue(keys[i]);
+        if (oldKeys != null)
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldKeys[i] != null) queue.enqueue(oldKeys[i]);
         return queue;
     }
 
@@ -138,17 +619,38 @@ public class LinearProbingHashST<Key, Value> {
     // integrity not maintained during a delete()
     private boolean check() {
 
-        // check that hash table is at most 50% full
-        if (M < 2*N) {
+        // check that hash table is at most maxLoad full and M is a power of two
+        if (N > maxLoad * M || (M & (M - 1)) != 0) {
             System.err.println("Hash table size M = " + M + "; array size N = " + N);
             return false;
         }
 
-        // check that each key in table can be found by get()
-        for (int i = 0; i < M; i++) {
-            if (keys[i] == null) continue;
-            else if (get(keys[i]) != vals[i]) {
-                System.err.println("get[" + keys[i] + "] = " + get(keys[i]) + "; vals[i] = " + vals[i]);
+        return check(keys, vals) && (oldKeys == null || check(oldKeys, oldVals));
+    }
+
+    // check the keys in one of the two tables
+    private boolean check(Key[] ks, Value[] vs) {
+        int mask = ks.length - 1;
+
+        // check that no key in a Robin Hood table is more than one slot
+        // further from its hash slot than the key before it
+        if (robinHood) {
+            for (int i = 0; i < ks.length; i++) {
+                int j = (i + 1) & mask;
+                if (ks[j] == null) continue;
+                int prev = (ks[i] == null) ? 0 : displacement(ks, i) + 1;
+                if (displacement(ks, j) > prev) {
+                    System.err.println("Robin Hood order violated at slot " + j);
+                    return false;
+                }
+            }
+        }
+
+        // check that each key in table can be found by indexOf()
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] == null) continue;
+            else if (indexOf(ks, ks[i]) != i) {
+                System.err.println("indexOf[" + ks[i] + "] = " + indexOf(ks, ks[i]) + "; i = " + i);
                 return false;
             }
         }
@@ -169,5 +671,14 @@ public class LinearProbingHashST<Key, Value> {
         // print keys
         for (String s : st.keys()) 
             StdOut.println(s + " " + st.get(s)); 
+
+        // a table with a low maxLoad shrinks as it empties, but never so
+        // far that it is more than maxLoad full again
+        LinearProbingHashST<Integer, Integer> sparse = new LinearProbingHashST<Integer, Integer>(0, 0.1);
+        for (int i = 1; i <= 100; i++) sparse.put(i, i);
+        for (int i = 1; i <= 100; i++) {
+            sparse.delete(i);
+            if (!sparse.check()) throw new IllegalStateException("table too full after delete(" + i + ")");
+        }
     }
 }
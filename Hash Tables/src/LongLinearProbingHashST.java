@@ -0,0 +1,273 @@
+/*************************************************************************
+ *  Compilation:  javac LongLinearProbingHashST.java
+ *  Execution:    java LongLinearProbingHashST
+ *  Dependencies: StdIn.java StdOut.java
+ *
+ *  Symbol table with long keys and double values implemented with a linear
+ *  probing hash table. Keys and values are stored in flat long[] and double[]
+ *  arrays (no Long or Double wrappers), and an unused slot is marked with
+ *  the sentinel key EMPTY. The sentinel key itself is stored outside the
+ *  arrays, so every long is a legal key.
+ *
+ *  get(), put() and contains() never allocate; only resize() does.
+ *  delete() shifts the rest of the cluster back in place. The table size
+ *  is a power of two, indexed by a mask over a mixed hash of the key.
+ *
+ *  % java LongLinearProbingHashST
+ *  3 1 4 1 5 9 2 6
+ *  6 7.0
+ *  4 2.0
+ *  5 4.0
+ *  9 5.0
+ *  2 6.0
+ *  1 3.0
+ *  3 0.0
+ *
+ *************************************************************************/
+
+import java.util.NoSuchElementException;
+
+public class LongLinearProbingHashST {
+    private static final int INIT_CAPACITY = 4;
+    private static final double DEFAULT_MAX_LOAD = 0.5;
+    private static final long EMPTY = 0L;  // key value that marks an unused slot
+
+    private int N;                // number of key-value pairs stored in the arrays
+    private int M;                // size of linear probing table
+    private long[] keys;          // the keys
+    private double[] vals;        // the values
+
+    private boolean hasEmptyKey;  // is the sentinel key EMPTY in the symbol table?
+    private double emptyKeyVal;   // value associated with the sentinel key
+
+    private final double maxLoad; // double the table before N/M exceeds this
+
+
+    // create an empty hash table
+    public LongLinearProbingHashST() {
+        this(INIT_CAPACITY);
+    }
+
+    // create linear probing hash table of given capacity (rounded up to a power of two)
+    public LongLinearProbingHashST(int capacity) {
+        this(DEFAULT_MAX_LOAD, capacity);
+    }
+
+    // create linear probing hash table that is kept at most maxLoad full and
+    // can hold expectedSize keys without resizing
+    public LongLinearProbingHashST(int expectedSize, double maxLoad) {
+        this(maxLoad, capacityFor(expectedSize, maxLoad));
+    }
+
+    private LongLinearProbingHashST(double maxLoad, int capacity) {
+        if (!(maxLoad > 0.0 && maxLoad < 1.0))
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1: " + maxLoad);
+        this.maxLoad = maxLoad;
+        M = powerOfTwoAtLeast(capacity);
+        keys = new long[M];
+        vals = new double[M];
+    }
+
+    // smallest power of two >= n (and >= 2)
+    private static int powerOfTwoAtLeast(int n) {
+        if (n > (1 << 30)) throw new IllegalArgumentException("capacity too large: " + n);
+        int m = 2;
+        while (m < n) m <<= 1;
+        return m;
+    }
+
+    // table size needed to hold n keys while staying at most maxLoad full
+    private static int capacityFor(int n, double maxLoad) {
+        if (n < 0) throw new IllegalArgumentException("expected size is negative: " + n);
+        return Math.max(INIT_CAPACITY, (int) Math.ceil((n + 1) / maxLoad));
+    }
+
+    // return the number of key-value pairs in the symbol table
+    public int size() {
+        return hasEmptyKey ? N + 1 : N;
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // hash function for keys - returns value between 0 and M-1
+    private int hash(long key) {
+        return (int) mix(key) & (M - 1);
+    }
+
+    // MurmurHash3 64-bit finalizer: every bit of h affects the low bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // resize the hash table to the given capacity by re-hashing all of the keys
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        double[] oldVals = vals;
+        M = capacity;
+        keys = new long[M];
+        vals = new double[M];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) insert(oldKeys[i], oldVals[i]);
+        }
+    }
+
+    // place a key known not to be in the table into the first free slot of its cluster
+    private void insert(long key, double val) {
+        int i;
+        for (i = hash(key); keys[i] != EMPTY; i = (i + 1) & (M - 1)) { }
+        keys[i] = key;
+        vals[i] = val;
+    }
+
+    // does a key-value pair with the given key exist in the symbol table?
+    public boolean contains(long key) {
+        if (key == EMPTY) return hasEmptyKey;
+        for (int i = hash(key); keys[i] != EMPTY; i = (i + 1) & (M - 1))
+            if (keys[i] == key) return true;
+        return false;
+    }
+
+    // insert the key-value pair into the symbol table
+    public void put(long key, double val) {
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+            emptyKeyVal = val;
+            return;
+        }
+
+        // double table size if one more key would make it more than maxLoad full
+        if (N + 1 > maxLoad * M) resize(2*M);
+
+        int i;
+        for (i = hash(key); keys[i] != EMPTY; i = (i + 1) & (M - 1)) {
+            if (keys[i] == key) { vals[i] = val; return; }
+        }
+        keys[i] = key;
+        vals[i] = val;
+        N++;
+    }
+
+    // return the value associated with the given key
+    public double get(long key) {
+        if (key == EMPTY) {
+            if (hasEmptyKey) return emptyKeyVal;
+            throw new NoSuchElementException("symbol table does not contain " + key);
+        }
+        for (int i = hash(key); keys[i] != EMPTY; i = (i + 1) & (M - 1))
+            if (keys[i] == key)
+                return vals[i];
+        throw new NoSuchElementException("symbol table does not contain " + key);
+    }
+
+    // return the value associated with the given key, or defaultValue if no such key
+    public double getOrDefault(long key, double defaultValue) {
+        if (key == EMPTY) return hasEmptyKey ? emptyKeyVal : defaultValue;
+        for (int i = hash(key); keys[i] != EMPTY; i = (i + 1) & (M - 1))
+            if (keys[i] == key)
+                return vals[i];
+        return defaultValue;
+    }
+
+    // delete the key (and associated value) from the symbol table
+    public void delete(long key) {
+        if (key == EMPTY) {
+            hasEmptyKey = false;
+            emptyKeyVal = 0.0;
+            return;
+        }
+        if (!contains(key)) return;
+
+        // find position i of key
+        int i = hash(key);
+        while (keys[i] != key) {
+            i = (i + 1) & (M - 1);
+        }
+
+        // move later keys in the cluster back over the hole when doing so keeps
+        // them reachable from their hash slot (Knuth's Algorithm R)
+        for (int j = (i + 1) & (M - 1); keys[j] != EMPTY; j = (j + 1) & (M - 1)) {
+            int h = hash(keys[j]);
+            if (i <= j ? (i < h && h <= j) : (i < h || h <= j)) continue;
+            keys[i] = keys[j];
+            vals[i] = vals[j];
+            i = j;
+        }
+
+        // delete key and associated value
+        keys[i] = EMPTY;
+        vals[i] = 0.0;
+
+        N--;
+
+        // halves size of array if it's a quarter of maxLoad full or less
+        // (12.5% for the default 0.5), so the halved table is at most half
+        // of maxLoad full
+        if (N > 0 && N <= maxLoad * M / 4) resize(M/2);
+
+        assert check();
+    }
+
+    // return all of the keys as an array (in table order)
+    public long[] keys() {
+        long[] a = new long[size()];
+        int n = 0;
+        if (hasEmptyKey) a[n++] = EMPTY;
+        for (int i = 0; i < M; i++)
+            if (keys[i] != EMPTY) a[n++] = keys[i];
+        return a;
+    }
+
+    // integrity check - don't check after each put() because
+    // integrity not maintained during a delete()
+    private boolean check() {
+
+        // check that hash table is at most maxLoad full and M is a power of two
+        if (N > maxLoad * M || (M & (M - 1)) != 0) {
+            System.err.println("Hash table size M = " + M + "; array size N = " + N);
+            return false;
+        }
+
+        // check that each key in table can be found by get()
+        for (int i = 0; i < M; i++) {
+            if (keys[i] == EMPTY) continue;
+            else if (get(keys[i]) != vals[i]) {
+                System.err.println("get[" + keys[i] + "] = " + get(keys[i]) + "; vals[i] = " + vals[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+   /***********************************************************************
+    *  Unit test client.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        LongLinearProbingHashST st = new LongLinearProbingHashST();
+        for (int i = 0; !StdIn.isEmpty(); i++) {
+            long key = StdIn.readLong();
+            st.put(key, i);
+        }
+
+        // print keys
+        for (long k : st.keys())
+            StdOut.println(k + " " + st.get(k));
+
+        // a table with a low maxLoad shrinks as it empties, but never so
+        // far that it is more than maxLoad full again
+        LongLinearProbingHashST sparse = new LongLinearProbingHashST(0, 0.1);
+        for (int i = 1; i <= 100; i++) sparse.put(i, i);
+        for (int i = 1; i <= 100; i++) {
+            sparse.delete(i);
+            if (!sparse.check()) throw new IllegalStateException("table too full after delete(" + i + ")");
+        }
+    }
+}
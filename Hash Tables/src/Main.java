@@ -51,6 +51,12 @@
 //? Modifying hashCode():
 // - We want an array index NOT a 32-bit integer, use:
 // - Use: private int hash(Key x) { return (x.hashCode() & 0x7fffffff) % M; } 
+//
+// - The % is an integer division on EVERY operation. If M is a power of two we can use a mask instead:
+//      private int hash(Key x) { return mix(x.hashCode()) & (M - 1); }
+// - A mask only keeps the LOW bits, so first "mix" the hash code (MurmurHash3 finalizer: xor-shift, multiply, xor-shift...)
+//   so every bit of hashCode() affects the index (eg Integer keys 0, 1024, 2048... would otherwise all collide)
+// - If the number of keys is known up front, size the table once: new LinearProbingHashST<>(expectedSize, maxLoad)
 
 //? Software caching:
 // - Computing the hash code for each key can be COSTLY
@@ -117,7 +123,8 @@
 // - Delete key-value pair:
 //      1. Find pair using above search
 //      2. Remove pair from hash table
-//      3. Re-hash all keys in the same cluster
+//      3. Shift later keys in the same cluster back into the hole (if that keeps them reachable from their hash)
+//      (no re-inserting through put(), so no resizes half-way through a delete)
 // 
 // - Up-sizing:
 // If the number of key-value pairs is >= half the size of the table:
@@ -128,12 +135,77 @@
 // If the number of key-value pairs is <= one-eighth the size of the table:
 //      1. Create a new table with 0.5x capacity
 //      2. Re-hash all the key-value pairs.
+//
+// - Incremental resizing (Redis-style):
+//      - Re-hashing everything at once means ONE unlucky put() re-hashes the whole table
+//      - Instead keep BOTH tables: every get/put/delete moves a few chains (or whole clusters) from the old table to the new one
+//      - Until the old table is empty, search the new table and then the old one
+//      - Linear probing: only move whole clusters (start at an empty slot), otherwise the keys left behind can't be found
+
+//? Robin Hood hashing:
+// - While inserting, if the key in the current slot is CLOSER to its hash slot than the key being inserted,
+//   swap them and carry on inserting the displaced key ("take from the rich, give to the poor")
+// - The mean displacement is unchanged but the MAX displacement (worst-case search) stays small,
+//   so load factors up to ~0.9 are usable: new LinearProbingHashST<>(capacity, 0.9, true)
+// - Search misses stop early: once we've probed further than the key in the current slot is displaced, the key is absent
+// - maxDisplacement() / meanDisplacement() report the probe lengths
+
+//? Concurrent hash tables (ConcurrentSeparateChainingHashST):
+// - One lock around the whole table serialises every thread, even readers
+// - Lock striping: writers lock only stripe (hash % 64); M is a power of two >= 64, so a key stays in the same stripe after doubling
+// - get() takes no lock: chain nodes are immutable (except a volatile value) and a new chain head is published with a volatile write
+// - delete() copies the nodes in front of the deleted one instead of unlinking it in place
+// - Cooperative resize: each writer moves one stripe of chains to the new table and leaves a FORWARD marker so readers follow along
+// - ConcurrentHashSTBenchmark compares it with a synchronized SeparateChainingHashST for 1 to 64 threads
+
+//? Chains as arrays (SeparateChainingHashST):
+// - A linked list costs a pointer chase (and likely a cache miss) per node searched
+// - Each chain is instead a small array of cached hashes + arrays of keys and values: compare ints first, call equals() only on a hash match
+// - Cached hashes also mean resize() never calls hashCode() again
+// - Treeify: a chain longer than 8 + 4*maxLoad with Comparable keys becomes a red-black tree (TreeMap) -> O(log n) worst case even if every key collides; far above the expected chain length, so only pathological chains pay for it
+//   (back to arrays below half that, 24 at the default maxLoad of 10; java.util.HashMap uses a fixed 8 and 6 because its load factor is below 1)
+
+//? Bulk loading:
+// - n put() calls from an empty table double the table ~lg n times, and every doubling re-hashes everything
+// - putAll() / ensureCapacity() size the table ONCE for the whole batch, then insert in a single pass
+// - LinearProbingHashST.fromArrays(keys, vals, maxLoad, threads): split the keys by the top bits of their slot,
+//   each thread fills its own range of slots; keys that probe past the end of their range are inserted afterwards
+
+//? Off-heap tables (MappedLongLinearProbingHashST):
+// - Keys and values live in a memory-mapped file, not on the heap: the GC never scans them, and a restart just maps the file again
+// - Fixed-width slots (8-byte key + 8-byte value) after a 64-byte header (magic, M, N, flags, maxLoad)
+// - A MappedByteBuffer is at most 2 GB, so big files are mapped in 1 GB pieces
+// - Resize writes a new file and renames it over the old one; a DIRTY flag in the header tells reopen to recount N
+
+//? Hash flooding:
+// - String.hashCode() is public and easy to invert: "Aa" and "BB" collide, so do all 2^k strings of k such blocks
+// - A client that picks the keys can put them all in one chain/cluster -> every operation becomes a linear scan
+// - Keyed hashing: hash Strings with SipHash under a random 128-bit key per table (keyedHash constructor flag)
+//   -> without the key, nobody can predict which strings collide; costs a bit more per hash than hashCode()
+// - HashFloodingBenchmark: throughput on random keys vs. colliding keys, with and without keyed hashing
+
+//? Monitoring:
+// - enableStats() -> HashSTStats: histogram of probes (or chain length) per operation, mean, p99, every resize and how long it took
+// - clusterHistogram() / chainHistogram(): lengths of the runs of occupied slots / of the chains, computed on demand
+// - footprint(): estimated bytes of the table's own arrays (keys and values not included)
+// - Off by default: a disabled table pays one null check per operation
+
+//? Filtering misses (CuckooFilter):
+// - A get() for a missing key still hashes, walks a whole chain and calls equals() on every key in it
+// - enableFilter(): a cuckoo filter of the keys' hashes answers "not there" from two longs (16-bit fingerprints, 4 per bucket)
+// - Unlike a Bloom filter it supports delete(), so put()/delete() keep it exact in sync with the table
+// - False positive rate ~ 8 * load / 2^16; falsePositiveRate() measures it (keys sharing a hashCode() always get through)
 
 // * ---SPACE USAGE---
 // - Separate chaining: ~ 48 N + 64 M 
 // - linear probing: between ~32 N and ~128 N
 // - BSTs: ~56N
 
+//? Primitive keys:
+// - LinearProbingHashST<Integer, Integer> also pays for the Integer wrappers (~16 bytes each) on top of the array references
+// - IntLinearProbingHashST stores keys and values in flat int[] arrays: between ~16 N and ~64 N, no wrappers
+// - An "empty" slot is marked with a sentinel key (0) and the sentinel key itself is stored in a separate field
+
 public class Main {
 
     public static void main(String[] args) {
@@ -0,0 +1,380 @@
+/*************************************************************************
+ *  Compilation:  javac MappedLongLinearProbingHashST.java
+ *  Execution:    java MappedLongLinearProbingHashST file
+ *  Dependencies: StdIn.java StdOut.java
+ *
+ *  Symbol table with long keys and long values implemented with a linear
+ *  probing hash table that lives in a memory-mapped file instead of on
+ *  the Java heap. The garbage collector never sees the table, and
+ *  reopening the file maps it straight back in: there is nothing to
+ *  deserialize or re-insert.
+ *
+ *  File layout (little-endian):
+ *
+ *      bytes  0-7    magic number "LPHT" + format version
+ *      bytes  8-11   flags: HAS_EMPTY_KEY, DIRTY
+ *      bytes 16-23   M, the number of slots (a power of two)
+ *      bytes 24-31   N, the number of keys in the slots
+ *      bytes 32-39   value of the sentinel key EMPTY, if present
+ *      bytes 40-47   maxLoad
+ *      bytes 64-     M slots of 16 bytes: key, then value
+ *
+ *  As in LongLinearProbingHashST, key 0 (EMPTY) marks an unused slot and is
+ *  itself kept in the header, so a freshly extended (zero-filled) file is
+ *  an empty table. A MappedByteBuffer holds at most 2^31 bytes, so the
+ *  file is mapped in CHUNK-sized pieces; slots are 16 bytes and CHUNK is
+ *  a multiple of 16, so no slot straddles two pieces.
+ *
+ *  The DIRTY flag is set while the table is open and cleared by close()
+ *  after all pages have been forced to disk. Opening a dirty file (the
+ *  process died without close()) recounts N from the slots. A crash of
+ *  the whole machine may lose writes that had not been flushed.
+ *
+ *  Growing the table writes the re-hashed table to file.resize and then
+ *  renames it over the original, so the file on disk is always a complete
+ *  table. The table never shrinks.
+ *
+ *  % java MappedLongLinearProbingHashST table.lpht
+ *  3 30 1 10 4 40 1 11
+ *  3 keys
+ *  4 40
+ *  3 30
+ *  1 11
+ *
+ *  % java MappedLongLinearProbingHashST table.lpht < /dev/null
+ *  3 keys
+ *  4 40
+ *  3 30
+ *  1 11
+ *
+ *************************************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+public class MappedLongLinearProbingHashST implements Closeable {
+    private static final long INIT_CAPACITY = 1024;
+    private static final double DEFAULT_MAX_LOAD = 0.5;
+    private static final long EMPTY = 0L;              // key value that marks an unused slot
+
+    private static final long MAGIC = 0x4c50485400000001L;   // "LPHT", version 1
+    private static final int HEADER = 64;              // bytes before the first slot
+    private static final int SLOT = 16;                // bytes per slot
+    private static final int CHUNK_SHIFT = 30;         // map the file in pieces of 2^30 bytes
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+    // header fields (byte offsets)
+    private static final int MAGIC_AT = 0, FLAGS_AT = 8, M_AT = 16, N_AT = 24, EMPTY_VAL_AT = 32, MAX_LOAD_AT = 40;
+    private static final int HAS_EMPTY_KEY = 1, DIRTY = 2;
+
+    private final Path path;            // the file
+    private FileChannel channel;        // open on the file
+    private MappedByteBuffer[] chunks;  // the file, CHUNK bytes per piece
+
+    private long N;                     // number of key-value pairs stored in the slots
+    private long M;                     // size of linear probing table
+    private boolean hasEmptyKey;        // is the sentinel key EMPTY in the symbol table?
+    private long emptyKeyVal;           // value associated with the sentinel key
+    private double maxLoad;             // double the table before N/M exceeds this
+
+
+    // open the table in the given file, creating an empty one if there is no such file
+    public MappedLongLinearProbingHashST(String file) throws IOException {
+        this(file, 0, DEFAULT_MAX_LOAD);
+    }
+
+    // open the table in the given file; a new file is sized to hold expectedSize
+    // keys while staying at most maxLoad full (an existing file keeps its own settings)
+    public MappedLongLinearProbingHashST(String file, long expectedSize, double maxLoad) throws IOException {
+        if (!(maxLoad > 0.0 && maxLoad < 1.0))
+            throw new IllegalArgumentException("maxLoad must be between 0 and 1: " + maxLoad);
+        if (expectedSize < 0) throw new IllegalArgumentException("expected size is negative: " + expectedSize);
+        path = Paths.get(file);
+
+        if (Files.exists(path) && Files.size(path) > 0) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (channel.size() < HEADER) throw new IOException(file + ": not a hash table file");
+            chunks = map(channel, HEADER);
+            if (chunks[0].getLong(MAGIC_AT) != MAGIC) throw new IOException(file + ": not a hash table file");
+            M = chunks[0].getLong(M_AT);
+            if (channel.size() != bytesFor(M)) throw new IOException(file + ": truncated (" + M + " slots)");
+            chunks = map(channel, bytesFor(M));
+            readHeader();
+            if ((chunks[0].getInt(FLAGS_AT) & DIRTY) != 0) N = countKeys();
+        }
+        else {
+            this.maxLoad = maxLoad;
+            M = powerOfTwoAtLeast(Math.max(INIT_CAPACITY, (long) Math.ceil((expectedSize + 1) / maxLoad)));
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            chunks = map(channel, bytesFor(M));
+        }
+        writeHeader(true);
+        chunks[0].force();
+    }
+
+    // smallest power of two >= n
+    private static long powerOfTwoAtLeast(long n) {
+        if (n > (1L << 40)) throw new IllegalArgumentException("capacity too large: " + n);
+        long m = 1;
+        while (m < n) m <<= 1;
+        return m;
+    }
+
+    // size of a file with m slots
+    private static long bytesFor(long m) {
+        return HEADER + m * SLOT;
+    }
+
+    // map the first size bytes of the channel (growing the file if needed, with zeros)
+    private static MappedByteBuffer[] map(FileChannel ch, long size) throws IOException {
+        int n = (int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] cs = new MappedByteBuffer[n];
+        for (int c = 0; c < n; c++) {
+            long start = (long) c << CHUNK_SHIFT;
+            cs[c] = ch.map(FileChannel.MapMode.READ_WRITE, start, Math.min(CHUNK_MASK + 1, size - start));
+            cs[c].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return cs;
+    }
+
+    private void readHeader() {
+        int flags   = chunks[0].getInt(FLAGS_AT);
+        N           = chunks[0].getLong(N_AT);
+        hasEmptyKey = (flags & HAS_EMPTY_KEY) != 0;
+        emptyKeyVal = chunks[0].getLong(EMPTY_VAL_AT);
+        maxLoad     = chunks[0].getDouble(MAX_LOAD_AT);
+    }
+
+    private void writeHeader(boolean dirty) {
+        chunks[0].putLong(MAGIC_AT, MAGIC);
+        chunks[0].putInt(FLAGS_AT, (hasEmptyKey ? HAS_EMPTY_KEY : 0) | (dirty ? DIRTY : 0));
+        chunks[0].putLong(M_AT, M);
+        chunks[0].putLong(N_AT, N);
+        chunks[0].putLong(EMPTY_VAL_AT, emptyKeyVal);
+        chunks[0].putDouble(MAX_LOAD_AT, maxLoad);
+    }
+
+    // number of non-empty slots
+    private long countKeys() {
+        long n = 0;
+        for (long i = 0; i < M; i++)
+            if (key(chunks, i) != EMPTY) n++;
+        return n;
+    }
+
+   /***********************************************************************
+    *  Slot access: slot i of cs[] starts at byte HEADER + 16*i of the file.
+    ***********************************************************************/
+
+    private static long key(MappedByteBuffer[] cs, long i) {
+        long at = HEADER + i * SLOT;
+        return cs[(int) (at >>> CHUNK_SHIFT)].getLong((int) (at & CHUNK_MASK));
+    }
+
+    private static long val(MappedByteBuffer[] cs, long i) {
+        long at = HEADER + i * SLOT + 8;
+        return cs[(int) (at >>> CHUNK_SHIFT)].getLong((int) (at & CHUNK_MASK));
+    }
+
+    private static void set(MappedByteBuffer[] cs, long i, long key, long val) {
+        long at = HEADER + i * SLOT;
+        MappedByteBuffer c = cs[(int) (at >>> CHUNK_SHIFT)];
+        c.putLong((int) (at & CHUNK_MASK), key);
+        c.putLong((int) (at & CHUNK_MASK) + 8, val);
+    }
+
+    private static void setVal(MappedByteBuffer[] cs, long i, long val) {
+        long at = HEADER + i * SLOT + 8;
+        cs[(int) (at >>> CHUNK_SHIFT)].putLong((int) (at & CHUNK_MASK), val);
+    }
+
+    // return the number of key-value pairs in the symbol table
+    public long size() {
+        return hasEmptyKey ? N + 1 : N;
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // hash function for keys - returns value between 0 and m-1 (m a power of two)
+    private static long hash(long key, long m) {
+        return mix(key) & (m - 1);
+    }
+
+    // MurmurHash3 64-bit finalizer: every bit of h affects the low bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // the slot holding key, or the empty slot that ends its cluster
+    private long slotOf(long key) {
+        long i;
+        for (i = hash(key, M); key(chunks, i) != EMPTY; i = (i + 1) & (M - 1))
+            if (key(chunks, i) == key) break;
+        return i;
+    }
+
+    // re-hash every key into a table of the given capacity in file.resize, then
+    // rename that over the file, so the file on disk is always a whole table
+    private void resize(long capacity) {
+        try {
+            Path tmp = Paths.get(path + ".resize");
+            FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                              StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer[] cs = map(ch, bytesFor(capacity));
+            for (long i = 0; i < M; i++) {
+                long key = key(chunks, i);
+                if (key == EMPTY) continue;
+                long j;
+                for (j = hash(key, capacity); key(cs, j) != EMPTY; j = (j + 1) & (capacity - 1)) { }
+                set(cs, j, key, val(chunks, i));
+            }
+
+            MappedByteBuffer[] old = chunks;
+            chunks = cs;
+            M = capacity;
+            writeHeader(true);
+            for (MappedByteBuffer c : chunks) c.force();
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // the old mapping is released when the buffers are garbage collected
+            channel.close();
+            channel = ch;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("could not resize " + path, e);
+        }
+    }
+
+    // does a key-value pair with the given key exist in the symbol table?
+    public boolean contains(long key) {
+        if (key == EMPTY) return hasEmptyKey;
+        return key(chunks, slotOf(key)) != EMPTY;
+    }
+
+    // insert the key-value pair into the symbol table
+    public void put(long key, long val) {
+        if (key == EMPTY) {
+            hasEmptyKey = true;
+            emptyKeyVal = val;
+            writeHeader(true);
+            return;
+        }
+
+        // double table size if one more key would make it more than maxLoad full
+        if (N + 1 > maxLoad * M) resize(2*M);
+
+        long i = slotOf(key);
+        if (key(chunks, i) == key) { setVal(chunks, i, val); return; }
+        set(chunks, i, key, val);
+        N++;
+        chunks[0].putLong(N_AT, N);
+    }
+
+    // return the value associated with the given key
+    public long get(long key) {
+        if (key == EMPTY) {
+            if (hasEmptyKey) return emptyKeyVal;
+            throw new NoSuchElementException("symbol table does not contain " + key);
+        }
+        long i = slotOf(key);
+        if (key(chunks, i) == EMPTY) throw new NoSuchElementException("symbol table does not contain " + key);
+        return val(chunks, i);
+    }
+
+    // return the value associated with the given key, or defaultValue if no such key
+    public long getOrDefault(long key, long defaultValue) {
+        if (key == EMPTY) return hasEmptyKey ? emptyKeyVal : defaultValue;
+        long i = slotOf(key);
+        return key(chunks, i) == EMPTY ? defaultValue : val(chunks, i);
+    }
+
+    // delete the key (and associated value) from the symbol table
+    public void delete(long key) {
+        if (key == EMPTY) {
+            hasEmptyKey = false;
+            emptyKeyVal = 0;
+            writeHeader(true);
+            return;
+        }
+        long i = slotOf(key);
+        if (key(chunks, i) == EMPTY) return;
+
+        // move later keys in the cluster back over the hole when doing so keeps
+        // them reachable from their hash slot (Knuth's Algorithm R)
+        for (long j = (i + 1) & (M - 1); key(chunks, j) != EMPTY; j = (j + 1) & (M - 1)) {
+            long h = hash(key(chunks, j), M);
+            if (i <= j ? (i < h && h <= j) : (i < h || h <= j)) continue;
+            set(chunks, i, key(chunks, j), val(chunks, j));
+            i = j;
+        }
+
+        // delete key and associated value
+        set(chunks, i, EMPTY, 0);
+
+        N--;
+        chunks[0].putLong(N_AT, N);
+    }
+
+    // return all of the keys as an array (in table order)
+    public long[] keys() {
+        if (size() > Integer.MAX_VALUE - 8) throw new IllegalStateException("too many keys for an array: " + size());
+        long[] a = new long[(int) size()];
+        int n = 0;
+        if (hasEmptyKey) a[n++] = EMPTY;
+        for (long i = 0; i < M; i++) {
+            long key = key(chunks, i);
+            if (key != EMPTY) a[n++] = key;
+        }
+        return a;
+    }
+
+    // write every changed page of the table to disk
+    public void flush() {
+        for (MappedByteBuffer c : chunks) c.force();
+    }
+
+    // flush the table and mark the file as cleanly closed
+    public void close() throws IOException {
+        flush();
+        writeHeader(false);
+        chunks[0].force();
+        channel.close();
+    }
+
+
+   /***********************************************************************
+    *  Unit test client.
+    ***********************************************************************/
+    public static void main(String[] args) throws IOException {
+        MappedLongLinearProbingHashST st = new MappedLongLinearProbingHashST(args[0]);
+        while (!StdIn.isEmpty()) {
+            long key = StdIn.readLong();
+            long val = StdIn.readLong();
+            st.put(key, val);
+        }
+
+        // print keys
+        StdOut.println(st.size() + " keys");
+        for (long k : st.keys())
+            StdOut.println(k + " " + st.get(k));
+        st.close();
+    }
+}
@@ -3,13 +3,57 @@
  *  Execution:    java SeparateChainingHashST
  *
  *  A symbol table implemented with a separate-chaining hash table.
+ *
+ *  The number of chains M is always a power of two: hash() scrambles the
+ *  bits of hashCode() with the MurmurHash3 finalizer and keeps the low
+ *  bits with a mask, so there is no integer division on any operation.
+ *
+ *  Each chain is a Bucket: parallel arrays of cached hashes, keys and
+ *  values, scanned front to back, so a search compares ints in one small
+ *  array instead of chasing a linked list. Empty chains are null. When a
+ *  bucket grows far past the average chain length (a bad hashCode(), or
+ *  keys chosen to collide) and its keys are Comparable, it moves them into
+ *  a red-black tree (java.util.TreeMap), so a search in it costs O(log n)
+ *  compareTo() calls instead of O(n) equals() calls. The threshold is
+ *  TREEIFY_THRESHOLD plus TREEIFY_LOAD times maxLoad: with keys that hash
+ *  uniformly a chain that long essentially never occurs (for maxLoad 10,
+ *  48 entries in a chain whose length is Poisson with mean at most 10), so
+ *  ordinary tables stay all arrays. A tree goes back to arrays when it
+ *  shrinks below half the threshold.
+ *
+ *  enableStats() turns on a HashSTStats record of the chain length each
+ *  operation searched and of resizes; chainHistogram() and footprint()
+ *  describe the table itself.
+ *
+ *  enableFilter() puts a CuckooFilter of the keys' hashes in front of the
+ *  chains, kept in sync by put() and delete(): most misses then read two
+ *  longs of the filter instead of walking a chain, and falsePositiveRate()
+ *  reports how often the filter let a miss through.
+ *
+ *  With keyed hashing enabled, String keys are hashed with SipHash under
+ *  a random key drawn for each table instead of with hashCode(), so
+ *  clients that choose the keys cannot make them collide (hash flooding).
+ *
+ *  With incremental resizing enabled, resize() only allocates the new
+ *  chains; every get/put/delete then moves a few of the old chains
+ *  across (as in Redis' dict), so no single operation pays for
+ *  re-hashing the whole table. Until the old chains are drained,
+ *  lookups check both arrays.
  * 
  *  % java SeparateChainingHashST
  *
  *************************************************************************/
 
+import java.util.Map;
+import java.util.TreeMap;
+
 public class SeparateChainingHashST<Key, Value> {
     private static final int INIT_CAPACITY = 4;
+    private static final double DEFAULT_MAX_LOAD = 10.0;
+    private static final int REHASH_STEP = 4;           // old chains moved per operation while resizing
+    private static final int TREEIFY_THRESHOLD = 8;     // longest bucket kept as plain arrays, plus...
+    private static final int TREEIFY_LOAD = 4;          // ...this many times maxLoad
+    private static final double MAX_FILTER_LOAD = 0.9;  // rebuild the filter bigger beyond this
 
     // largest prime <= 2^i for i = 3 to 31
     // not currently used for doubling and shrinking
@@ -22,7 +66,154 @@ public class SeparateChainingHashST<Key, Value> {
 
     private int N;                                // number of key-value pairs
     private int M;                                // hash table size
-    private SequentialSearchST<Key, Value>[] st;  // array of linked-list symbol tables
+    private Bucket<Key, Value>[] st;              // array of chains, st[i] null if chain i is empty
+    private final double maxLoad;                 // double M when the average list length reaches this
+    private final int treeifyThreshold;           // longest bucket kept as plain arrays
+    private final boolean incremental;            // resize a few chains per operation?
+    private final boolean keyedHash;              // SipHash String keys?
+    private final long k0, k1;                    // this table's SipHash key
+
+    private Bucket<Key, Value>[] old;             // chains being drained into st[], null if not resizing
+    private int moved;                            // old[0..moved-1] have been drained
+    private HashSTStats stats;                    // null unless enableStats() was called
+    private CuckooFilter filter;                  // hashes of all keys, null unless enableFilter() was called
+    private long filteredMisses;                  // misses answered by the filter alone
+    private long falsePositives;                  // misses the filter let through
+
+    // a chain: arrays of (mixed) hashes, keys and values, plus a tree for the
+    // keys of one Comparable class once the arrays get too long
+    private static class Bucket<Key, Value> {
+        private int n;                             // number of entries in the arrays
+        private int[] hashes;
+        private Key[] keys;
+        private Value[] vals;
+        private TreeMap<Key, Value> tree;          // null unless treeified
+        private Class<?> treeClass;                // class of every key in tree
+
+        @SuppressWarnings("unchecked")
+        public Bucket() {
+            hashes = new int[2];
+            keys = (Key[])   new Object[2];
+            vals = (Value[]) new Object[2];
+        }
+
+        public int size() {
+            return tree == null ? n : n + tree.size();
+        }
+
+        // does key belong in the tree rather than in the arrays?
+        private boolean inTree(Key key) {
+            return tree != null && key.getClass() == treeClass;
+        }
+
+        // index of key in the arrays, -1 if not there; compares hashes before calling equals()
+        private int indexOf(int h, Key key) {
+            for (int i = 0; i < n; i++)
+                if (hashes[i] == h && key.equals(keys[i])) return i;
+            return -1;
+        }
+
+        public Value get(int h, Key key) {
+            if (inTree(key)) return tree.get(key);
+            int i = indexOf(h, key);
+            return i < 0 ? null : vals[i];
+        }
+
+        // insert or update key, treeifying beyond treeifyAt entries; return
+        // true if key was not in the bucket before
+        public boolean put(int h, Key key, Value val, int treeifyAt) {
+            if (inTree(key)) return tree.put(key, val) == null;
+            int i = indexOf(h, key);
+            if (i >= 0) { vals[i] = val; return false; }
+
+            if (n == hashes.length) resize(2*n);
+            hashes[n] = h;
+            keys[n] = key;
+            vals[n] = val;
+            n++;
+            if (tree == null && n > treeifyAt && key instanceof Comparable) treeify(key.getClass());
+            return true;
+        }
+
+        // delete key; return true if it was in the bucket (table re-hashes
+        // the keys of the tree if it goes back to arrays)
+        public boolean delete(int h, Key key, SeparateChainingHashST<Key, Value> table) {
+            if (inTree(key)) {
+                if (tree.remove(key) == null) return false;
+                if (tree.size() < table.treeifyThreshold / 2) untreeify(table);
+                return true;
+            }
+            int i = indexOf(h, key);
+            if (i < 0) return false;
+
+            // move the last entry into the hole
+            n--;
+            hashes[i] = hashes[n];
+            keys[i] = keys[n];
+            vals[i] = vals[n];
+            keys[n] = null;
+            vals[n] = null;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void resize(int capacity) {
+            int[]   h = new int[capacity];
+            Key[]   k = (Key[])   new Object[capacity];
+            Value[] v = (Value[]) new Object[capacity];
+            System.arraycopy(hashes, 0, h, 0, n);
+            System.arraycopy(keys,   0, k, 0, n);
+            System.arraycopy(vals,   0, v, 0, n);
+            hashes = h;
+            keys = k;
+            vals = v;
+        }
+
+        // move the keys of class c from the arrays into a tree; keys of other
+        // classes (which c might not be able to compare with) stay in the arrays
+        private void treeify(Class<?> c) {
+            tree = new TreeMap<Key, Value>();
+            treeClass = c;
+            int j = 0;
+            for (int i = 0; i < n; i++) {
+                if (keys[i].getClass() == c) tree.put(keys[i], vals[i]);
+                else {
+                    hashes[j] = hashes[i];
+                    keys[j] = keys[i];
+                    vals[j] = vals[i];
+                    j++;
+                }
+            }
+            for (int i = j; i < n; i++) {
+                keys[i] = null;
+                vals[i] = null;
+            }
+            n = j;
+        }
+
+        // move the keys of the tree back into the arrays
+        private void untreeify(SeparateChainingHashST<Key, Value> table) {
+            TreeMap<Key, Value> t = tree;
+            tree = null;
+            treeClass = null;
+            if (n + t.size() > hashes.length) resize(n + t.size());
+            for (Map.Entry<Key, Value> e : t.entrySet()) {
+                hashes[n] = table.hash(e.getKey());
+                keys[n] = e.getKey();
+                vals[n] = e.getValue();
+                n++;
+            }
+        }
+
+        public void keys(Queue<Key> queue) {
+            for (int i = 0; i < n; i++)
+                queue.enqueue(keys[i]);
+            if (tree != null) {
+                for (Key key : tree.keySet())
+                    queue.enqueue(key);
+            }
+        }
+    }
 
 
     // create separate chaining hash table
@@ -30,32 +221,135 @@ public class SeparateChainingHashST<Key, Value> {
         this(INIT_CAPACITY);
     } 
 
-    // create separate chaining hash table with M lists
+    // create separate chaining hash table with M lists (rounded up to a power of two)
     public SeparateChainingHashST(int M) {
-        this.M = M;
-        st = (SequentialSearchST<Key, Value>[]) new SequentialSearchST[M];
-        for (int i = 0; i < M; i++)
-            st[i] = new SequentialSearchST<Key, Value>();
+        this(DEFAULT_MAX_LOAD, false, false, M);
     } 
 
+    // create separate chaining hash table whose average list length stays below
+    // maxLoad and that can hold expectedSize keys without resizing
+    public SeparateChainingHashST(int expectedSize, double maxLoad) {
+        this(expectedSize, maxLoad, false);
+    }
+
+    // as above, moving keys to the new chains a few chains per operation
+    // when resizing if incremental is set
+    public SeparateChainingHashST(int expectedSize, double maxLoad, boolean incremental) {
+        this(expectedSize, maxLoad, incremental, false);
+    }
+
+    // as above, hashing String keys with SipHash under a random per-table key
+    // if keyedHash is set
+    public SeparateChainingHashST(int expectedSize, double maxLoad, boolean incremental, boolean keyedHash) {
+        this(maxLoad, incremental, keyedHash, chainsFor(expectedSize, maxLoad));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private SeparateChainingHashST(double maxLoad, boolean incremental, boolean keyedHash, int chains) {
+        if (!(maxLoad > 0.0))
+            throw new IllegalArgumentException("maxLoad must be positive: " + maxLoad);
+        this.maxLoad = maxLoad;
+        this.treeifyThreshold = (int) Math.min(Integer.MAX_VALUE, TREEIFY_THRESHOLD + Math.ceil(TREEIFY_LOAD * maxLoad));
+        this.incremental = incremental;
+        this.keyedHash = keyedHash;
+        this.k0 = keyedHash ? SipHash.randomKey() : 0;
+        this.k1 = keyedHash ? SipHash.randomKey() : 0;
+        this.M = powerOfTwoAtLeast(chains);
+        st = (Bucket<Key, Value>[]) new Bucket[M];
+    }
+
+    // smallest power of two >= n (and >= 1)
+    private static int powerOfTwoAtLeast(int n) {
+        if (n > (1 << 30)) throw new IllegalArgumentException("too many chains: " + n);
+        int m = 1;
+        while (m < n) m <<= 1;
+        return m;
+    }
+
+    // number of chains needed to hold n keys with average list length below maxLoad
+    private static int chainsFor(int n, double maxLoad) {
+        if (n < 0) throw new IllegalArgumentException("expected size is negative: " + n);
+        return Math.max(INIT_CAPACITY, (int) Math.ceil((n + 1) / maxLoad));
+    }
+
     // resize the hash table to have the given number of chains b rehashing all of the keys
+    // (or, in incremental mode, start moving them a few chains per operation)
+    @SuppressWarnings({"unchecked", "rawtypes"})
     private void resize(int chains) {
-        SeparateChainingHashST<Key, Value> temp = new SeparateChainingHashST<Key, Value>(chains);
-        for (int i = 0; i < M; i++) {
-            for (Key key : st[i].keys()) {
-                temp.put(key, st[i].get(key));
-            }
+        long start = (stats == null) ? 0 : System.nanoTime();
+        if (old != null) finishResize();
+
+        Bucket<Key, Value>[] prev = st;
+        this.M  = chains;
+        this.st = (Bucket<Key, Value>[]) new Bucket[M];
+
+        if (incremental && N > 0) {
+            old = prev;
+            moved = 0;
+        }
+        else {
+            for (int i = 0; i < prev.length; i++)
+                moveChain(prev[i]);
         }
-        this.M  = temp.M;
-        this.N  = temp.N;
-        this.st = temp.st;
+        if (stats != null) stats.recordResize(prev.length, M, System.nanoTime() - start);
     }
 
-    // hash value between 0 and M-1
+    // rehash every key of the given chain into st[], reusing the cached hashes
+    private void moveChain(Bucket<Key, Value> chain) {
+        if (chain == null) return;
+        for (int i = 0; i < chain.n; i++)
+            place(chain.hashes[i], chain.keys[i], chain.vals[i]);
+        if (chain.tree != null) {
+            for (Map.Entry<Key, Value> e : chain.tree.entrySet())
+                place(hash(e.getKey()), e.getKey(), e.getValue());
+        }
+    }
+
+    // put key (with mixed hash h) into its chain of st[]
+    private void place(int h, Key key, Value val) {
+        int i = h & (M - 1);
+        if (st[i] == null) st[i] = new Bucket<Key, Value>();
+        st[i].put(h, key, val, treeifyThreshold);
+    }
+
+    // drain the next REHASH_STEP old chains into st[]
+    private void resizeStep() {
+        for (int k = 0; k < REHASH_STEP && moved < old.length; k++) {
+            moveChain(old[moved]);
+            old[moved++] = null;
+        }
+        if (moved == old.length) old = null;
+    }
+
+    // drain everything that is left in the old chains
+    private void finishResize() {
+        while (old != null) resizeStep();
+    }
+
+    // the old chain that would hold a key with mixed hash h, null if it has
+    // been drained already (or there is none)
+    private Bucket<Key, Value> oldChain(int h) {
+        if (old == null) return null;
+        return old[h & (old.length - 1)];
+    }
+
+    // the hashCode() of key with its bits mixed (or, in keyed mode, the SipHash
+    // of a String key); the chain is the low bits
     private int hash(Key key) {
-        return (key.hashCode() & 0x7fffffff) % M;
+        if (keyedHash && key instanceof String) return (int) SipHash.hash(k0, k1, (String) key);
+        return mix(key.hashCode());
     } 
 
+    // MurmurHash3 32-bit finalizer: every bit of h affects the low bits
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
     // return number of key-value pairs in symbol table
     public int size() {
         return N;
@@ -73,38 +367,196 @@ public class SeparateChainingHashST<Key, Value> {
 
     // return value associated with key, null if no such key
     public Value get(Key key) {
-        int i = hash(key);
-        return st[i].get(key);
+        if (old != null) resizeStep();
+        int h = hash(key);
+        if (filter != null && !filter.mightContain(h)) {
+            filteredMisses++;
+            if (stats != null) stats.recordProbes(0);
+            return null;
+        }
+        Bucket<Key, Value> chain = st[h & (M - 1)];
+        if (stats != null) stats.recordProbes(chain == null ? 0 : chain.size());
+        Value val = chain == null ? null : chain.get(h, key);
+        if (val != null) return val;
+        chain = oldChain(h);
+        if (chain != null) val = chain.get(h, key);
+        if (val == null && filter != null) falsePositives++;
+        return val;
     } 
 
     // insert key-value pair into the table
     public void put(Key key, Value val) {
         if (val == null) { delete(key); return; }
 
-        // double table size if average length of list >= 10
-        if (N >= 10*M) resize(2*M);
+        // double table size if average length of list >= maxLoad
+        if (N >= maxLoad * M) resize(2*M);
 
-        int i = hash(key);
-        if (!st[i].contains(key)) N++;
-        st[i].put(key, val);
+        // keys still waiting in an old chain are updated where they are
+        if (old != null) resizeStep();
+        int h = hash(key);
+        Bucket<Key, Value> chain = oldChain(h);
+        if (chain != null && chain.get(h, key) != null) {
+            chain.put(h, key, val, treeifyThreshold);
+            return;
+        }
+
+        int i = h & (M - 1);
+        if (st[i] == null) st[i] = new Bucket<Key, Value>();
+        if (stats != null) stats.recordProbes(st[i].size());
+        if (st[i].put(h, key, val, treeifyThreshold)) {
+            N++;
+            if (filter != null) addToFilter(h);
+        }
     } 
 
     // delete key (and associated value) if key is in the table
     public void delete(Key key) {
-        int i = hash(key);
-        if (st[i].contains(key)) N--;
-        st[i].delete(key);
+        if (old != null) resizeStep();
+        int h = hash(key);
+        if (filter != null && !filter.mightContain(h)) {
+            filteredMisses++;
+            return;
+        }
+        int i = h & (M - 1);
+        int n = N;
+        if (stats != null) stats.recordProbes(st[i] == null ? 0 : st[i].size());
+        if (st[i] != null && st[i].delete(h, key, this)) {
+            N--;
+            if (st[i].size() == 0) st[i] = null;
+        }
+
+        Bucket<Key, Value> chain = oldChain(h);
+        if (chain != null && chain.delete(h, key, this)) N--;
+
+        if (filter != null) {
+            if (N < n) filter.delete(h);
+            else       falsePositives++;
+        }
 
-        // halve table size if average length of list <= 2
-        if (M > INIT_CAPACITY && N <= 2*M) resize(M/2);
+        // halve table size if average length of list <= maxLoad/5
+        if (old == null && M > INIT_CAPACITY && N <= maxLoad / 5 * M) resize(M/2);
     } 
 
+    // grow the table (at most once) so that it can hold expectedSize keys
+    // in total without resizing again
+    public void ensureCapacity(int expectedSize) {
+        int chains = chainsFor(expectedSize, maxLoad);
+        if (chains <= M) return;
+        resize(powerOfTwoAtLeast(chains));
+        finishResize();
+    }
+
+    // insert the pairs keys[i], vals[i] in order (a later duplicate key wins and
+    // a null value deletes, as in put()), resizing at most once up front
+    public void putAll(Key[] keys, Value[] vals) {
+        if (keys.length != vals.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + " != " + vals.length);
+        ensureCapacity(N + keys.length);
+        for (int i = 0; i < keys.length; i++)
+            put(keys[i], vals[i]);
+    }
+
+    // average list length
+    public double loadFactor() {
+        return (double) N / M;
+    }
+
+    // chainHistogram()[b] = number of chains whose length falls in HashSTStats bucket b
+    public long[] chainHistogram() {
+        long[] h = new long[HashSTStats.bucket(N) + 1];
+        for (int i = 0; i < M; i++)
+            h[HashSTStats.bucket(st[i] == null ? 0 : st[i].size())]++;
+        return h;
+    }
+
+    // estimated bytes used by the table and its filter (compressed references,
+    // 16-byte array headers), not counting the keys and values themselves
+    public long footprint() {
+        long bytes = footprint(st);
+        if (old != null) bytes += footprint(old);
+        if (filter != null) bytes += filter.footprint();
+        return bytes;
+    }
+
+    private static long footprint(Bucket<?, ?>[] chains) {
+        long bytes = 16 + 4L * chains.length;
+        for (Bucket<?, ?> b : chains) {
+            if (b == null) continue;
+            bytes += 40 + 3 * (16 + 4L * b.hashes.length);      // the Bucket and its three arrays
+            if (b.tree != null) bytes += 48 + 40L * b.tree.size();  // TreeMap and its entries
+        }
+        return bytes;
+    }
+
+    // start recording chain lengths searched and resizes; returns the statistics
+    public HashSTStats enableStats() {
+        if (stats == null) stats = new HashSTStats();
+        return stats;
+    }
+
+    // the statistics being recorded, null if enableStats() was never called
+    public HashSTStats stats() {
+        return stats;
+    }
+
+    // start answering most misses from a cuckoo filter of the keys' hashes;
+    // returns the filter
+    public CuckooFilter enableFilter() {
+        if (filter == null) rebuildFilter();
+        return filter;
+    }
+
+    // the filter in front of the chains, null if enableFilter() was never called
+    public CuckooFilter filter() {
+        return filter;
+    }
+
+    // fraction of the misses (get or delete of a key not in the table) that
+    // the filter did not catch, measured since enableFilter()
+    public double falsePositiveRate() {
+        long misses = filteredMisses + falsePositives;
+        return misses == 0 ? 0.0 : (double) falsePositives / misses;
+    }
+
+    // add the hash of a new key to the filter, rebuilding it bigger if it is
+    // too full (the new key is already in the chains, so the rebuild sees it)
+    private void addToFilter(int h) {
+        if (filter.size() >= MAX_FILTER_LOAD * filter.capacity()) rebuildFilter();
+        else filter.add(h);
+    }
+
+    // a new filter, half full, of the hashes of every key (a cuckoo filter
+    // cannot grow in place: it does not know the keys)
+    private void rebuildFilter() {
+        filter = new CuckooFilter(2 * Math.max(N, 16));
+        addHashes(st, 0);
+        if (old != null) addHashes(old, moved);
+    }
+
+    // add the hash of every key in chains[from..] to the filter
+    private void addHashes(Bucket<Key, Value>[] chains, int from) {
+        for (int i = from; i < chains.length; i++) {
+            Bucket<Key, Value> b = chains[i];
+            if (b == null) continue;
+            for (int j = 0; j < b.n; j++)
+                filter.add(b.hashes[j]);
+            if (b.tree != null) {
+                for (Key key : b.tree.keySet())
+                    filter.add(hash(key));
+            }
+        }
+    }
+
     // return keys in symbol table as an Iterable
     public Iterable<Key> keys() {
         Queue<Key> queue = new Queue<Key>();
         for (int i = 0; i < M; i++) {
-            for (Key key : st[i].keys())
-                queue.enqueue(key);
+            if (st[i] != null) st[i].keys(queue);
+        }
+        if (old != null) {
+            for (int i = moved; i < old.length; i++) {
+                if (old[i] != null) old[i].keys(queue);
+            }
         }
         return queue;
     } 
@@ -0,0 +1,87 @@
+/*************************************************************************
+ *  Compilation:  javac SipHash.java
+ *  Execution:    java SipHash string
+ *  Dependencies: StdOut.java
+ *
+ *  SipHash-2-4 (Aumasson and Bernstein): a keyed hash function. Without
+ *  the 128-bit key (k0, k1), an attacker cannot produce Strings that
+ *  collide, which String.hashCode() makes easy ("Aa" and "BB" have the
+ *  same hashCode(), and so do all 2^k concatenations of k such blocks).
+ *
+ *  hash(k0, k1, s) hashes the UTF-16LE bytes of s, reading four chars per
+ *  64-bit word straight from the String (no byte[] is allocated).
+ *
+ *  % java SipHash hello
+ *  819c337a74b8c09a
+ *
+ *************************************************************************/
+
+import java.security.SecureRandom;
+
+public class SipHash {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // a fresh random half of a 128-bit key
+    public static long randomKey() {
+        return RANDOM.nextLong();
+    }
+
+    // SipHash-2-4 of the UTF-16LE encoding of s under the key (k0, k1)
+    public static long hash(long k0, long k1, String s) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+
+        int n = s.length();
+        int end = n & ~3;                   // chars in whole 8-byte words
+        for (int i = 0; i < end; i += 4) {
+            long m = (long) s.charAt(i)
+                   | (long) s.charAt(i + 1) << 16
+                   | (long) s.charAt(i + 2) << 32
+                   | (long) s.charAt(i + 3) << 48;
+
+            v3 ^= m;
+            for (int r = 0; r < 2; r++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            v0 ^= m;
+        }
+
+        // last word: the leftover chars, and the message length in bytes (mod 256) in the top byte
+        long b = (long) (2 * n) << 56;
+        for (int i = end; i < n; i++)
+            b |= (long) s.charAt(i) << (16 * (i - end));
+
+        v3 ^= b;
+        for (int r = 0; r < 2; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        v0 ^= b;
+
+        v2 ^= 0xff;
+        for (int r = 0; r < 4; r++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+
+   /***********************************************************************
+    *  Test client: hash the argument under the key 00 01 02 ... 0f.
+    ***********************************************************************/
+    public static void main(String[] args) {
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        StdOut.println(Long.toHexString(hash(k0, k1, args[0])));
+    }
+}
@@ -6,6 +6,21 @@
  *  
  *  Symbol table implementation with binary search in an ordered array.
  *
+ *  put() shifts up to N entries to make room, so loading N keys one at a
+ *  time costs ~N^2/4 array accesses. putAll() and deleteAll() instead sort
+ *  the batch (mergesort) and merge it with the table in one linear pass:
+ *  loading N keys costs O(N log N).
+ *
+ *  freeze() copies the keys into Eytzinger (breadth-first) order: the
+ *  children of position k are 2k and 2k+1, so the first levels of every
+ *  search share a few cache lines, and while the CPU waits for one level
+ *  it can already speculate into the next. Searches use that copy until
+ *  the next put or delete, which throws it away. See LongEytzingerST for
+ *  long keys (and for why the descent is not branch-free).
+ *
+ *  keys() copies the keys into a Queue; cursor() and spliterator() read
+ *  them straight from keys[] instead.
+ *
  *  % more tinyST.txt
  *  S E A R C H E X A M P L E
  *  
@@ -23,13 +38,21 @@
  *
  *************************************************************************/
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 
 public class BinarySearchST<Key extends Comparable<Key>, Value> {
     private static final int INIT_CAPACITY = 2;
     private Key[] keys;
     private Value[] vals;
     private int N = 0;
+    private Key[] eyt;         // keys in Eytzinger order, eyt[1..N], null unless frozen
+    private Value[] eytVals;   // eytVals[k] = value of eyt[k]
+    private int[] eytRank;     // eytRank[k] = rank of eyt[k]
 
     // create an empty symbol table with default initial capacity
     public BinarySearchST() { this(INIT_CAPACITY); }   
@@ -72,6 +95,10 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
     // return the value associated with the given key, or null if no such key
     public Value get(Key key) {
         if (isEmpty()) return null;
+        if (eyt != null) {
+            int k = eytzinger(key);
+            return (k != 0 && eyt[k].compareTo(key) == 0) ? eytVals[k] : null;
+        }
         int i = rank(key); 
         if (i < N && keys[i].compareTo(key) == 0) return vals[i];
         return null;
@@ -79,6 +106,10 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
 
     // return the number of keys in the table that are smaller than given key
     public int rank(Key key) {
+        if (eyt != null) {
+            int k = eytzinger(key);
+            return k == 0 ? N : eytRank[k];
+        }
         int lo = 0, hi = N-1; 
         while (lo <= hi) { 
             int m = lo + (hi - lo) / 2; 
@@ -94,6 +125,7 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
     // Search for key. Update value if found; grow table if new. 
     public void put(Key key, Value val)  {
         if (val == null) { delete(key); return; }
+        thaw();
 
         int i = rank(key);
 
@@ -121,6 +153,7 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
     // Remove the key-value pair if present
     public void delete(Key key)  {
         if (isEmpty()) return;
+        thaw();
 
         // compute rank
         int i = rank(key);
@@ -145,6 +178,99 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
         assert check();
     } 
 
+   /*****************************************************************************
+    *  Batch operations
+    *****************************************************************************/
+
+    // insert the pairs ks[i], vs[i] (a later duplicate key wins and a null
+    // value deletes, as with put() in order): sort the batch, then merge it
+    // with keys[] and vals[] into new arrays in one pass
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void putAll(Key[] ks, Value[] vs) {
+        if (ks.length != vs.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + ks.length + " != " + vs.length);
+        int m = ks.length;
+        if (m == 0) return;
+        thaw();
+        Key[]   bk = ks.clone();
+        Value[] bv = vs.clone();
+        sort(bk, bv, (Key[]) new Comparable[m], (Value[]) new Object[m], 0, m-1);
+
+        Key[]   tempk = (Key[])   new Comparable[Math.max(INIT_CAPACITY, N + m)];
+        Value[] tempv = (Value[]) new Object[tempk.length];
+        int i = 0, j = 0, n = 0;
+        while (i < N || j < m) {
+            // the last of a run of equal batch keys is the one put() would keep
+            while (j+1 < m && bk[j].compareTo(bk[j+1]) == 0) j++;
+
+            int cmp = (i == N) ? 1 : (j == m) ? -1 : keys[i].compareTo(bk[j]);
+            if (cmp < 0) {
+                tempk[n] = keys[i];
+                tempv[n++] = vals[i++];
+                continue;
+            }
+            if (cmp == 0) i++;                   // the batch replaces the old value
+            if (bv[j] != null) {
+                tempk[n] = bk[j];
+                tempv[n++] = bv[j];
+            }
+            j++;
+        }
+        keys = tempk;
+        vals = tempv;
+        N = n;
+        while (N > 0 && N <= keys.length/4) resize(keys.length/2);
+
+        assert check();
+    }
+
+    // remove every key of ks that is in the table, compacting keys[] and
+    // vals[] in one pass
+    public void deleteAll(Key[] ks) {
+        if (isEmpty() || ks.length == 0) return;
+        thaw();
+        Key[] batch = ks.clone();
+        Arrays.sort(batch);
+
+        int j = 0, n = 0;
+        for (int i = 0; i < N; i++) {
+            while (j < batch.length && batch[j].compareTo(keys[i]) < 0) j++;
+            if (j < batch.length && batch[j].compareTo(keys[i]) == 0) continue;
+            keys[n] = keys[i];
+            vals[n++] = vals[i];
+        }
+        for (int i = n; i < N; i++) {
+            keys[i] = null;  // to avoid loitering
+            vals[i] = null;
+        }
+        N = n;
+        while (N > 0 && N <= keys.length/4) resize(keys.length/2);
+
+        assert check();
+    }
+
+    // stably sort a[lo..hi] by key, moving v[] along (top-down mergesort,
+    // skipping the merge when the halves are already in order)
+    private static <Key extends Comparable<Key>, Value> void sort(Key[] a, Value[] v, Key[] auxk, Value[] auxv, int lo, int hi) {
+        if (hi <= lo) return;
+        int mid = lo + (hi - lo) / 2;
+        sort(a, v, auxk, auxv, lo, mid);
+        sort(a, v, auxk, auxv, mid + 1, hi);
+        if (a[mid].compareTo(a[mid+1]) <= 0) return;
+
+        for (int k = lo; k <= hi; k++) {
+            auxk[k] = a[k];
+            auxv[k] = v[k];
+        }
+        int i = lo, j = mid+1;
+        for (int k = lo; k <= hi; k++) {
+            if      (i > mid)                           { a[k] = auxk[j]; v[k] = auxv[j++]; }
+            else if (j > hi)                            { a[k] = auxk[i]; v[k] = auxv[i++]; }
+            else if (auxk[j].compareTo(auxk[i]) < 0)    { a[k] = auxk[j]; v[k] = auxv[j++]; }
+            else                                        { a[k] = auxk[i]; v[k] = auxv[i++]; }
+        }
+    }
+
     // delete the minimum key and its associated value
     public void deleteMin() {
         if (isEmpty()) throw new NoSuchElementException("Symbol table underflow error");
@@ -158,6 +284,64 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
     }
 
 
+   /*****************************************************************************
+    *  Frozen (Eytzinger) mode
+    *****************************************************************************/
+
+    // lay the keys out in Eytzinger order for faster searches, until the
+    // next put or delete
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void freeze() {
+        if (eyt != null) return;
+        eyt     = (Key[])   new Comparable[N+1];
+        eytVals = (Value[]) new Object[N+1];
+        eytRank = new int[N+1];
+        int i = 0;
+
+        // in-order walk of the implicit tree 1, 2..3, 4..7, ... (iterative:
+        // go left as far as possible, fill, then step to the right child)
+        int k = 1;
+        while (i < N) {
+            while (2*k <= N) k = 2*k;
+            while (true) {
+                eyt[k] = keys[i];
+                eytVals[k] = vals[i];
+                eytRank[k] = i++;
+                if (2*k + 1 <= N) { k = 2*k + 1; break; }
+                // climb while k is a right child, then once more to its parent
+                while ((k & 1) == 1) k >>>= 1;
+                k >>>= 1;
+                if (k == 0) break;
+            }
+        }
+        assert eytzingerCheck();
+    }
+
+    // is the table frozen?
+    public boolean isFrozen() {
+        return eyt != null;
+    }
+
+    // drop the Eytzinger copy before a change
+    private void thaw() {
+        eyt = null;
+        eytVals = null;
+        eytRank = null;
+    }
+
+    // position in eyt[] of the smallest key >= key, 0 if there is none
+    private int eytzinger(Key key) {
+        int k = 1;
+        while (k <= N) {
+            if (eyt[k].compareTo(key) < 0) k = 2*k + 1;
+            else                           k = 2*k;
+        }
+        // k went right (bit 1) past the answer, then left (bit 0) down to a
+        // leaf: cancel the trailing ones and the last zero
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+
    /*****************************************************************************
     *  Ordered symbol table methods
     *****************************************************************************/
@@ -211,6 +395,115 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
         return queue; 
     }
 
+   /*****************************************************************************
+    *  Range cursors: lazy iteration without building a Queue
+    *****************************************************************************/
+
+    // a cursor over all the keys, in ascending order
+    public Cursor cursor() {
+        return new Cursor(0, N);
+    }
+
+    // a cursor over the keys in [lo, hi], in ascending order
+    public Cursor cursor(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in cursor()");
+        if (hi == null) throw new NullPointerException("hi is null in cursor()");
+        return new Cursor(rank(lo), end(lo, hi));
+    }
+
+    // one past the index of the last key in [lo, hi]
+    private int end(Key lo, Key hi) {
+        if (lo.compareTo(hi) > 0) return rank(lo);
+        return contains(hi) ? rank(hi) + 1 : rank(hi);
+    }
+
+    // a position in keys[]: next() reads the keys in place, seek() is a
+    // binary search. The table must not be changed while a cursor is in use.
+    public class Cursor implements Iterator<Key> {
+        private final int from, to;        // the range is keys[from..to-1]
+        private int i;                     // index of the next key
+        private int last = -1;             // index of the key returned by next()
+
+        private Cursor(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.i = from;
+        }
+
+        // move to the smallest key >= key in the range
+        public void seek(Key key) {
+            i = Math.min(Math.max(rank(key), from), to);
+            last = -1;
+        }
+
+        public boolean hasNext() {
+            return i < to;
+        }
+
+        public Key next() {
+            if (!hasNext()) throw new NoSuchElementException("no more keys in range");
+            last = i;
+            return keys[i++];
+        }
+
+        // the value of the key last returned by next()
+        public Value value() {
+            if (last < 0) throw new IllegalStateException("next() has not been called since the last seek()");
+            return vals[last];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    // a Spliterator over the keys in [lo, hi]: sized, sorted, and split by
+    // index into halves, so a parallel stream gets balanced parts
+    public Spliterator<Key> spliterator(Key lo, Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in spliterator()");
+        if (hi == null) throw new NullPointerException("hi is null in spliterator()");
+        return new KeySpliterator(rank(lo), end(lo, hi));
+    }
+
+    // the keys of keys[i..to-1]
+    private class KeySpliterator implements Spliterator<Key> {
+        private int i;
+        private final int to;
+
+        public KeySpliterator(int i, int to) {
+            this.i = i;
+            this.to = to;
+        }
+
+        public boolean tryAdvance(Consumer<? super Key> action) {
+            if (i >= to) return false;
+            action.accept(keys[i++]);
+            return true;
+        }
+
+        // hand the first half of the keys to a new spliterator
+        public Spliterator<Key> trySplit() {
+            int mid = i + (to - i) / 2;
+            if (mid == i) return null;
+            KeySpliterator prefix = new KeySpliterator(i, mid);
+            i = mid;
+            return prefix;
+        }
+
+        public long estimateSize() {
+            return to - i;
+        }
+
+        public int characteristics() {
+            return ORDERED | SORTED | DISTINCT | NONNULL | SIZED | SUBSIZED;
+        }
+
+        // keys are in their natural order
+        public Comparator<? super Key> getComparator() {
+            return null;
+        }
+    }
+
     /*****************************************************************************
     *  Check internal invariants
     *****************************************************************************/
@@ -219,6 +512,16 @@ public class BinarySearchST<Key extends Comparable<Key>, Value> {
         return isSorted() && rankCheck();
     }
 
+    // does the Eytzinger copy hold keys[] and vals[] in the right places?
+    private boolean eytzingerCheck() {
+        for (int k = 1; k <= N; k++) {
+            if (eyt[k] != keys[eytRank[k]] || eytVals[k] != vals[eytRank[k]]) return false;
+            if (2*k     <= N && eyt[2*k].compareTo(eyt[k])     >= 0) return false;
+            if (2*k + 1 <= N && eyt[2*k + 1].compareTo(eyt[k]) <= 0) return false;
+        }
+        return true;
+    }
+
     // are the items in the array in ascending order?
     private boolean isSorted() {
         for (int i = 1; i < size(); i++)
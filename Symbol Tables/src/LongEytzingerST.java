@@ -0,0 +1,274 @@
+/*************************************************************************
+ *  Compilation:  javac LongEytzingerST.java
+ *  Execution:    java LongEytzingerST n
+ *  Dependencies: Queue.java StdOut.java
+ *
+ *  A static ordered symbol table with primitive long keys, built once
+ *  from arrays of keys and values and searched in Eytzinger order.
+ *
+ *  The keys are stored breadth-first in a long[]: the children of
+ *  position k are 2k and 2k+1, so the first levels of the tree sit
+ *  together at the front of the array and stay in cache, and the 16
+ *  great-great-grandchildren of any position share two cache lines
+ *  (eight longs each). Binary search on a sorted array instead touches a
+ *  new cache line at almost every step of a large table.
+ *
+ *  The descent keeps its branch on purpose. Java has no prefetch
+ *  instruction, and a branch-free descent (k = 2k + (less ? 1 : 0), a
+ *  conditional move) waits for every load before it can start the next
+ *  one. With the branch, the CPU guesses and starts loading the next
+ *  levels; that speculation is the prefetch, and a wrong guess costs
+ *  less than the cache miss it hides. Measured on 4M keys (below):
+ *  branch-free Eytzinger ~2x slower than binary search, branching ~1.4x
+ *  faster.
+ *
+ *  The test client times n random lookups in a table of n keys with
+ *  Arrays.binarySearch() on the same keys sorted, with the branch-free
+ *  descent, and with the branching one.
+ *
+ *  % java LongEytzingerST 4000000
+ *  binary search:            519 ns/lookup
+ *  Eytzinger, branchless:   1054 ns/lookup
+ *  Eytzinger:                369 ns/lookup
+ *
+ *************************************************************************/
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class LongEytzingerST<Value> {
+    private final long[] keys;     // keys[1..N] in Eytzinger order
+    private final Value[] vals;    // vals[k] = value of keys[k]
+    private final int[] ranks;     // ranks[k] = rank of keys[k]
+    private final long[] sorted;   // the keys in ascending order, for select()
+    private final int N;
+
+    // the symbol table of the pairs ks[i], vs[i]; a later duplicate key wins
+    // and null values are left out, as with put() in order
+    @SuppressWarnings("unchecked")
+    public LongEytzingerST(long[] ks, Value[] vs) {
+        if (ks.length != vs.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + ks.length + " != " + vs.length);
+        int m = ks.length;
+        long[]  bk = ks.clone();
+        Value[] bv = vs.clone();
+        sort(bk, bv, new long[m], (Value[]) new Object[m], 0, m-1);
+
+        // keep the last of each run of equal keys, unless its value is null
+        int n = 0;
+        for (int j = 0; j < m; j++) {
+            if (j+1 < m && bk[j] == bk[j+1]) continue;
+            if (bv[j] == null) continue;
+            bk[n] = bk[j];
+            bv[n++] = bv[j];
+        }
+        N = n;
+        sorted = Arrays.copyOf(bk, n);
+
+        keys  = new long[N+1];
+        vals  = (Value[]) new Object[N+1];
+        ranks = new int[N+1];
+        int i = build(bk, bv, 0, 1);
+        assert i == N;
+        assert check();
+    }
+
+    // fill the subtree rooted at position k in order with bk[i..], bv[i..];
+    // return the next unused index
+    private int build(long[] bk, Value[] bv, int i, int k) {
+        if (k > N) return i;
+        i = build(bk, bv, i, 2*k);
+        keys[k] = bk[i];
+        vals[k] = bv[i];
+        ranks[k] = i++;
+        return build(bk, bv, i, 2*k + 1);
+    }
+
+    // stably sort a[lo..hi], moving v[] along (top-down mergesort, skipping
+    // the merge when the halves are already in order)
+    private static <Value> void sort(long[] a, Value[] v, long[] auxk, Value[] auxv, int lo, int hi) {
+        if (hi <= lo) return;
+        int mid = lo + (hi - lo) / 2;
+        sort(a, v, auxk, auxv, lo, mid);
+        sort(a, v, auxk, auxv, mid + 1, hi);
+        if (a[mid] <= a[mid+1]) return;
+
+        for (int k = lo; k <= hi; k++) {
+            auxk[k] = a[k];
+            auxv[k] = v[k];
+        }
+        int i = lo, j = mid+1;
+        for (int k = lo; k <= hi; k++) {
+            if      (i > mid)           { a[k] = auxk[j]; v[k] = auxv[j++]; }
+            else if (j > hi)            { a[k] = auxk[i]; v[k] = auxv[i++]; }
+            else if (auxk[j] < auxk[i]) { a[k] = auxk[j]; v[k] = auxv[j++]; }
+            else                        { a[k] = auxk[i]; v[k] = auxv[i++]; }
+        }
+    }
+
+    // position in keys[] of the smallest key >= key, 0 if there is none
+    private int position(long key) {
+        int k = 1;
+        while (k <= N) {
+            if (keys[k] < key) k = 2*k + 1;
+            else               k = 2*k;
+        }
+        // k went right (bit 1) past the answer, then left (bit 0) down to a
+        // leaf: cancel the trailing ones and the last zero
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    // position() without the branch, for the test client: the bit for
+    // keys[k] < key is the sign of keys[k] - key, corrected for overflow
+    // (Hacker's Delight 2-12), so each step must wait for its load
+    private int positionBranchFree(long key) {
+        int k = 1;
+        while (k <= N) {
+            long a = keys[k], d = a - key;
+            k = 2*k + (int) ((d ^ ((a ^ key) & (d ^ a))) >>> 63);
+        }
+        return k >>> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    // number of key-value pairs in the table
+    public int size() {
+        return N;
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // is the key in the table?
+    public boolean contains(long key) {
+        int k = position(key);
+        return k != 0 && keys[k] == key;
+    }
+
+    // return the value associated with the given key, or null if no such key
+    public Value get(long key) {
+        int k = position(key);
+        return (k != 0 && keys[k] == key) ? vals[k] : null;
+    }
+
+    // return the number of keys in the table that are smaller than given key
+    public int rank(long key) {
+        int k = position(key);
+        return k == 0 ? N : ranks[k];
+    }
+
+
+   /*****************************************************************************
+    *  Ordered symbol table methods
+    *****************************************************************************/
+    public long min() {
+        if (isEmpty()) throw new NoSuchElementException("empty symbol table");
+        return sorted[0];
+    }
+
+    public long max() {
+        if (isEmpty()) throw new NoSuchElementException("empty symbol table");
+        return sorted[N-1];
+    }
+
+    public long select(int k) {
+        if (k < 0 || k >= N) throw new IllegalArgumentException("rank out of range: " + k);
+        return sorted[k];
+    }
+
+    // largest key <= key
+    public long floor(long key) {
+        int k = position(key);
+        if (k != 0 && keys[k] == key) return key;
+        int i = (k == 0) ? N : ranks[k];
+        if (i == 0) throw new NoSuchElementException("no key <= " + key);
+        return sorted[i-1];
+    }
+
+    // smallest key >= key
+    public long ceiling(long key) {
+        int k = position(key);
+        if (k == 0) throw new NoSuchElementException("no key >= " + key);
+        return keys[k];
+    }
+
+    // number of keys in [lo, hi]
+    public int size(long lo, long hi) {
+        if (lo > hi) return 0;
+        if (contains(hi)) return rank(hi) - rank(lo) + 1;
+        else              return rank(hi) - rank(lo);
+    }
+
+    // the keys in [lo, hi], in ascending order
+    public Iterable<Long> keys(long lo, long hi) {
+        Queue<Long> queue = new Queue<Long>();
+        for (int i = rank(lo); i < N && sorted[i] <= hi; i++)
+            queue.enqueue(sorted[i]);
+        return queue;
+    }
+
+
+   /*****************************************************************************
+    *  Check internal invariants
+    *****************************************************************************/
+    private boolean check() {
+        for (int k = 1; k <= N; k++) {
+            if (sorted[ranks[k]] != keys[k]) return false;
+            if (2*k     <= N && keys[2*k]     >= keys[k]) return false;
+            if (2*k + 1 <= N && keys[2*k + 1] <= keys[k]) return false;
+        }
+        return true;
+    }
+
+
+   /*****************************************************************************
+    *  Test client
+    *****************************************************************************/
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        Random random = new Random(42);
+        long[] ks = new long[n];
+        Integer[] vs = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ks[i] = random.nextLong();
+            vs[i] = i;
+        }
+        LongEytzingerST<Integer> st = new LongEytzingerST<Integer>(ks, vs);
+        long[] sorted = ks.clone();
+        Arrays.sort(sorted);
+
+        // half the lookups hit, half miss
+        long[] queries = new long[n];
+        for (int i = 0; i < n; i++)
+            queries[i] = (i % 2 == 0) ? ks[random.nextInt(n)] : random.nextLong();
+
+        // best of three rounds, after one warm-up round
+        long binary = Long.MAX_VALUE, branchFree = Long.MAX_VALUE, eytzinger = Long.MAX_VALUE;
+        long hits = 0, hitsBranchFree = 0, hitsEytzinger = 0;
+        for (int round = 0; round < 4; round++) {
+            long start = System.nanoTime();
+            for (long q : queries)
+                if (Arrays.binarySearch(sorted, q) >= 0) hits++;
+            if (round > 0) binary = Math.min(binary, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (long q : queries) {
+                int k = st.positionBranchFree(q);
+                if (k != 0 && st.keys[k] == q) hitsBranchFree++;
+            }
+            if (round > 0) branchFree = Math.min(branchFree, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (long q : queries)
+                if (st.contains(q)) hitsEytzinger++;
+            if (round > 0) eytzinger = Math.min(eytzinger, System.nanoTime() - start);
+        }
+        if (hitsBranchFree != hits || hitsEytzinger != hits)
+            throw new IllegalStateException("searches disagree");
+        StdOut.printf("binary search:         %6d ns/lookup\n", binary / n);
+        StdOut.printf("Eytzinger, branchless: %6d ns/lookup\n", branchFree / n);
+        StdOut.printf("Eytzinger:             %6d ns/lookup\n", eytzinger / n);
+    }
+}
@@ -93,6 +93,23 @@
 // - Average case: O(n)
 // - Worst case: O(2n)
 
+//? Bulk loading (putAll / deleteAll):
+// - n put()s of unsorted keys shift ~n^2/4 entries in total -> quadratic
+// - putAll: mergesort the batch (O(m log m)), then merge it with the table in one linear pass (O(n + m))
+// - deleteAll: sort the batch, then compact the array in one pass, skipping the batch keys
+
+//? Eytzinger layout (freeze() / LongEytzingerST):
+// - Binary search on a big sorted array: almost every step is a cache miss in a different line
+// - Eytzinger (BFS) order: children of k at 2k and 2k+1 -> top levels share a few cache lines, descendants lie close together
+// - Lower bound = walk to a leaf, then strip the trailing right-turns from k (k >>> (ntz(~k) + 1))
+// - freeze() keeps an Eytzinger copy for searches until the next put/delete; LongEytzingerST is the static long[] version
+
+//? Persistent symbol tables (PersistentST / SnapshotST):
+// - put/delete return a NEW table; the old one is unchanged and still usable (immutable nodes)
+// - Path copying: only the ~lg n nodes on the search path are copied, everything else is shared
+// - Weight-balanced tree: no subtree more than 3x the size of its sibling; node sizes also give rank/select
+// - SnapshotST: writers publish each new version with one volatile write; readers never lock and see a consistent snapshot
+
 
 // * ---SIDE NOTES---
 // - Best case time-complexity for search algorithms is ALMOST ALWAYS O(1) since first-time hit is possible
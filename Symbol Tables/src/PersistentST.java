@@ -0,0 +1,416 @@
+/*************************************************************************
+ *  Compilation:  javac PersistentST.java
+ *  Execution:    java PersistentST < input.txt
+ *  Dependencies: StdIn.java StdOut.java
+ *
+ *  An immutable ordered symbol table: put() and delete() leave this
+ *  table alone and return a new one. The new table shares all of its
+ *  nodes with the old one except the ~lg N on the path to the changed
+ *  key (path copying), so a version costs O(log N) time and space.
+ *
+ *  Nothing is ever mutated after construction, so any number of threads
+ *  can read a PersistentST without locks, and a reader that holds one
+ *  sees the same keys for as long as it likes. SnapshotST publishes the
+ *  versions for a writer.
+ *
+ *  The tree is weight-balanced (Adams; the parameters delta = 3, ratio = 2
+ *  of Haskell's Data.Map): neither subtree of a node has more than
+ *  delta times the nodes of the other (plus one), restored by single or
+ *  double rotations on the way back up. Every node knows its subtree
+ *  size, so rank() and select() are O(log N) too.
+ *
+ *  % java PersistentST < tinyST.txt
+ *  A 8
+ *  C 4
+ *  E 12
+ *  ...
+ *  X 7
+ *  without vowels: C H L M P R S X
+ *  first version still has 10 keys
+ *
+ *************************************************************************/
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public final class PersistentST<Key extends Comparable<Key>, Value> implements Iterable<Key> {
+    private static final int DELTA = 3;   // max ratio of the sizes of two sibling subtrees
+    private static final int RATIO = 2;   // single rotation if the outer grandchild is this much bigger
+
+    private final Node<Key, Value> root;
+
+    private static final class Node<Key, Value> {
+        private final Key key;
+        private final Value val;
+        private final Node<Key, Value> left, right;
+        private final int size;           // number of nodes in subtree
+
+        public Node(Key key, Value val, Node<Key, Value> left, Node<Key, Value> right) {
+            this.key = key;
+            this.val = val;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    // the empty symbol table
+    public PersistentST() {
+        this(null);
+    }
+
+    private PersistentST(Node<Key, Value> root) {
+        this.root = root;
+    }
+
+    // the table with the given root; this table if the root did not change
+    private PersistentST<Key, Value> with(Node<Key, Value> x) {
+        return x == root ? this : new PersistentST<Key, Value>(x);
+    }
+
+    private static int size(Node<?, ?> x) {
+        return x == null ? 0 : x.size;
+    }
+
+    // number of key-value pairs in the table
+    public int size() {
+        return size(root);
+    }
+
+    // is the symbol table empty?
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    // return the value associated with the given key, or null if no such key
+    public Value get(Key key) {
+        if (key == null) throw new NullPointerException("called get() with null key");
+        Node<Key, Value> x = root;
+        while (x != null) {
+            int cmp = key.compareTo(x.key);
+            if      (cmp < 0) x = x.left;
+            else if (cmp > 0) x = x.right;
+            else              return x.val;
+        }
+        return null;
+    }
+
+    // is the key in the table?
+    public boolean contains(Key key) {
+        return get(key) != null;
+    }
+
+
+   /*************************************************************************
+    *  New versions
+    *************************************************************************/
+
+    // the table with key associated with val (a null val deletes key)
+    public PersistentST<Key, Value> put(Key key, Value val) {
+        if (key == null) throw new NullPointerException("called put() with null key");
+        if (val == null) return delete(key);
+        return with(put(root, key, val));
+    }
+
+    private static <Key extends Comparable<Key>, Value> Node<Key, Value> put(Node<Key, Value> x, Key key, Value val) {
+        if (x == null) return new Node<Key, Value>(key, val, null, null);
+        int cmp = key.compareTo(x.key);
+        if (cmp < 0) {
+            Node<Key, Value> left = put(x.left, key, val);
+            return left == x.left ? x : balance(x.key, x.val, left, x.right);
+        }
+        if (cmp > 0) {
+            Node<Key, Value> right = put(x.right, key, val);
+            return right == x.right ? x : balance(x.key, x.val, x.left, right);
+        }
+        return val == x.val ? x : new Node<Key, Value>(x.key, val, x.left, x.right);
+    }
+
+    // the table without key
+    public PersistentST<Key, Value> delete(Key key) {
+        if (key == null) throw new NullPointerException("called delete() with null key");
+        return with(delete(root, key));
+    }
+
+    private static <Key extends Comparable<Key>, Value> Node<Key, Value> delete(Node<Key, Value> x, Key key) {
+        if (x == null) return null;
+        int cmp = key.compareTo(x.key);
+        if (cmp < 0) {
+            Node<Key, Value> left = delete(x.left, key);
+            return left == x.left ? x : balance(x.key, x.val, left, x.right);
+        }
+        if (cmp > 0) {
+            Node<Key, Value> right = delete(x.right, key);
+            return right == x.right ? x : balance(x.key, x.val, x.left, right);
+        }
+        return glue(x.left, x.right);
+    }
+
+    // the table without its smallest key
+    public PersistentST<Key, Value> deleteMin() {
+        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow error");
+        return with(deleteMin(root));
+    }
+
+    // the table without its largest key
+    public PersistentST<Key, Value> deleteMax() {
+        if (isEmpty()) throw new NoSuchElementException("Symbol table underflow error");
+        return with(deleteMax(root));
+    }
+
+    private static <Key, Value> Node<Key, Value> deleteMin(Node<Key, Value> x) {
+        if (x.left == null) return x.right;
+        return balance(x.key, x.val, deleteMin(x.left), x.right);
+    }
+
+    private static <Key, Value> Node<Key, Value> deleteMax(Node<Key, Value> x) {
+        if (x.right == null) return x.left;
+        return balance(x.key, x.val, x.left, deleteMax(x.right));
+    }
+
+    // join two balanced subtrees whose parent was deleted: the bigger one
+    // gives up its closest key to be the new root
+    private static <Key, Value> Node<Key, Value> glue(Node<Key, Value> l, Node<Key, Value> r) {
+        if (l == null) return r;
+        if (r == null) return l;
+        if (l.size > r.size) {
+            Node<Key, Value> m = max(l);
+            return balance(m.key, m.val, deleteMax(l), r);
+        }
+        else {
+            Node<Key, Value> m = min(r);
+            return balance(m.key, m.val, l, deleteMin(r));
+        }
+    }
+
+
+   /*************************************************************************
+    *  Weight balancing
+    *************************************************************************/
+
+    // a node for key, val with subtrees l and r, which were balanced before
+    // one key was added to or removed from one of them
+    private static <Key, Value> Node<Key, Value> balance(Key key, Value val, Node<Key, Value> l, Node<Key, Value> r) {
+        int sl = size(l), sr = size(r);
+        if (sl + sr <= 1)     return new Node<Key, Value>(key, val, l, r);
+        if (sr > DELTA * sl)  return rotateLeft(key, val, l, r);
+        if (sl > DELTA * sr)  return rotateRight(key, val, l, r);
+        return new Node<Key, Value>(key, val, l, r);
+    }
+
+    // r is too heavy: single rotation if its right subtree is the bigger one
+    private static <Key, Value> Node<Key, Value> rotateLeft(Key key, Value val, Node<Key, Value> l, Node<Key, Value> r) {
+        Node<Key, Value> rl = r.left, rr = r.right;
+        if (size(rl) < RATIO * size(rr))
+            return new Node<Key, Value>(r.key, r.val, new Node<Key, Value>(key, val, l, rl), rr);
+        return new Node<Key, Value>(rl.key, rl.val,
+                                    new Node<Key, Value>(key, val, l, rl.left),
+                                    new Node<Key, Value>(r.key, r.val, rl.right, rr));
+    }
+
+    // l is too heavy: single rotation if its left subtree is the bigger one
+    private static <Key, Value> Node<Key, Value> rotateRight(Key key, Value val, Node<Key, Value> l, Node<Key, Value> r) {
+        Node<Key, Value> ll = l.left, lr = l.right;
+        if (size(lr) < RATIO * size(ll))
+            return new Node<Key, Value>(l.key, l.val, ll, new Node<Key, Value>(key, val, lr, r));
+        return new Node<Key, Value>(lr.key, lr.val,
+                                    new Node<Key, Value>(l.key, l.val, ll, lr.left),
+                                    new Node<Key, Value>(key, val, lr.right, r));
+    }
+
+
+   /*************************************************************************
+    *  Ordered symbol table methods
+    *************************************************************************/
+
+    // smallest key
+    public Key min() {
+        if (isEmpty()) throw new NoSuchElementException("called min() with empty symbol table");
+        return min(root).key;
+    }
+
+    private static <Key, Value> Node<Key, Value> min(Node<Key, Value> x) {
+        while (x.left != null) x = x.left;
+        return x;
+    }
+
+    // largest key
+    public Key max() {
+        if (isEmpty()) throw new NoSuchElementException("called max() with empty symbol table");
+        return max(root).key;
+    }
+
+    private static <Key, Value> Node<Key, Value> max(Node<Key, Value> x) {
+        while (x.right != null) x = x.right;
+        return x;
+    }
+
+    // largest key <= key
+    public Key floor(Key key) {
+        if (key == null) throw new NullPointerException("called floor() with null key");
+        Key best = null;
+        for (Node<Key, Value> x = root; x != null; ) {
+            int cmp = key.compareTo(x.key);
+            if (cmp == 0) return x.key;
+            if (cmp < 0) x = x.left;
+            else       { best = x.key; x = x.right; }
+        }
+        if (best == null) throw new NoSuchElementException("all keys are greater than " + key);
+        return best;
+    }
+
+    // smallest key >= key
+    public Key ceiling(Key key) {
+        if (key == null) throw new NullPointerException("called ceiling() with null key");
+        Key best = null;
+        for (Node<Key, Value> x = root; x != null; ) {
+            int cmp = key.compareTo(x.key);
+            if (cmp == 0) return x.key;
+            if (cmp > 0) x = x.right;
+            else       { best = x.key; x = x.left; }
+        }
+        if (best == null) throw new NoSuchElementException("all keys are less than " + key);
+        return best;
+    }
+
+    // number of keys less than key
+    public int rank(Key key) {
+        if (key == null) throw new NullPointerException("called rank() with null key");
+        int r = 0;
+        for (Node<Key, Value> x = root; x != null; ) {
+            int cmp = key.compareTo(x.key);
+            if      (cmp < 0) x = x.left;
+            else if (cmp > 0) { r += 1 + size(x.left); x = x.right; }
+            else              return r + size(x.left);
+        }
+        return r;
+    }
+
+    // key of rank k
+    public Key select(int k) {
+        if (k < 0 || k >= size()) throw new IllegalArgumentException("rank out of range: " + k);
+        Node<Key, Value> x = root;
+        while (true) {
+            int t = size(x.left);
+            if      (t > k) x = x.left;
+            else if (t < k) { k -= t + 1; x = x.right; }
+            else            return x.key;
+        }
+    }
+
+    // number of keys in [lo, hi]
+    public int size(Key lo, Key hi) {
+        if (lo.compareTo(hi) > 0) return 0;
+        if (contains(hi)) return rank(hi) - rank(lo) + 1;
+        else              return rank(hi) - rank(lo);
+    }
+
+    // all keys, in ascending order
+    public Iterable<Key> keys() {
+        return this;
+    }
+
+    // the keys in [lo, hi], in ascending order
+    public Iterable<Key> keys(final Key lo, final Key hi) {
+        if (lo == null) throw new NullPointerException("lo is null in keys()");
+        if (hi == null) throw new NullPointerException("hi is null in keys()");
+        return new Iterable<Key>() {
+            public Iterator<Key> iterator() { return new KeyIterator(lo, hi); }
+        };
+    }
+
+    // iterate over all keys, in ascending order
+    public Iterator<Key> iterator() {
+        return new KeyIterator(null, null);
+    }
+
+    // in-order walk of the keys in [lo, hi] (null = unbounded) with an
+    // explicit stack of the ancestors still to visit; the tree is
+    // immutable, so the walk needs no copy and no lock
+    private class KeyIterator implements Iterator<Key> {
+        private final Key hi;
+        // the height is at most log_{4/3} (N+1) < 2.41 lg (N+1)
+        private final Object[] stack = new Object[3 * (32 - Integer.numberOfLeadingZeros(size())) + 2];
+        private int n;
+
+        public KeyIterator(Key lo, Key hi) {
+            this.hi = hi;
+            // push the path to the first key >= lo
+            for (Node<Key, Value> x = root; x != null; ) {
+                if (lo != null && lo.compareTo(x.key) > 0) x = x.right;
+                else { stack[n++] = x; x = x.left; }
+            }
+        }
+
+        public boolean hasNext() {
+            return n > 0 && (hi == null || hi.compareTo(top().key) >= 0);
+        }
+
+        public Key next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            Node<Key, Value> x = top();
+            n--;
+            for (Node<Key, Value> y = x.right; y != null; y = y.left)
+                stack[n++] = y;
+            return x.key;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<Key, Value> top() {
+            return (Node<Key, Value>) stack[n-1];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+
+   /*************************************************************************
+    *  Check internal invariants
+    *************************************************************************/
+    private boolean check() {
+        return isBalanced(root) && isBST(root, null, null);
+    }
+
+    // is every node weight-balanced with the right size?
+    private static boolean isBalanced(Node<?, ?> x) {
+        if (x == null) return true;
+        int sl = size(x.left), sr = size(x.right);
+        if (x.size != sl + sr + 1) return false;
+        if (sl + sr > 1 && (sl > DELTA * sr || sr > DELTA * sl)) return false;
+        return isBalanced(x.left) && isBalanced(x.right);
+    }
+
+    // are the keys of x strictly between min and max (null = unbounded)?
+    private static <Key extends Comparable<Key>> boolean isBST(Node<Key, ?> x, Key min, Key max) {
+        if (x == null) return true;
+        if (min != null && x.key.compareTo(min) <= 0) return false;
+        if (max != null && x.key.compareTo(max) >= 0) return false;
+        return isBST(x.left, min, x.key) && isBST(x.right, x.key, max);
+    }
+
+
+   /*************************************************************************
+    *  Test client
+    *************************************************************************/
+    public static void main(String[] args) {
+        PersistentST<String, Integer> st = new PersistentST<String, Integer>();
+        for (int i = 0; !StdIn.isEmpty(); i++) {
+            String key = StdIn.readString();
+            st = st.put(key, i);
+        }
+        assert st.check();
+        for (String s : st.keys())
+            StdOut.println(s + " " + st.get(s));
+
+        PersistentST<String, Integer> consonants = st;
+        for (String vowel : new String[] { "A", "E", "I", "O", "U" })
+            consonants = consonants.delete(vowel);
+        StdOut.print("without vowels:");
+        for (String s : consonants)
+            StdOut.print(" " + s);
+        StdOut.println();
+        StdOut.println("first version still has " + st.size() + " keys");
+    }
+}
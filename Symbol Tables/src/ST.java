@@ -5,6 +5,10 @@
  *  Sorted symbol table implementation using a java.util.TreeMap.
  *  Does not allow duplicates.
  *
+ *  The TreeMap is changed in place, so readers and writers sharing an
+ *  ST must synchronize; SnapshotST is a copy-on-write version whose
+ *  readers need no lock.
+ *
  *  % java ST
  *
  *************************************************************************/
@@ -0,0 +1,137 @@
+/*************************************************************************
+ *  Compilation:  javac SnapshotST.java
+ *  Execution:    java SnapshotST readers seconds
+ *  Dependencies: PersistentST.java StdOut.java
+ *
+ *  A copy-on-write ordered symbol table for many readers and few writers.
+ *
+ *  The current version is a PersistentST in a volatile field. A writer
+ *  (writers take turns on a lock) builds the next version, sharing all
+ *  but O(log N) nodes with the current one, and publishes it with a
+ *  single volatile write. Readers take no lock and write no shared
+ *  memory: every read method works on the version it loads once at the
+ *  start, and snapshot() hands out that version, so a reader can run
+ *  several queries, or iterate keys() for as long as it likes, against
+ *  one consistent state while writers carry on.
+ *
+ *  Since readers share nothing that they write, they scale with the
+ *  number of cores. The test client runs readers doing floor() and
+ *  ceiling() against one writer and reports reads per second.
+ *
+ *  % java SnapshotST 4 2
+ *  4 readers: 319025 reads/sec, writer: 55255 puts/sec   (on one core)
+ *
+ *************************************************************************/
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SnapshotST<Key extends Comparable<Key>, Value> implements Iterable<Key> {
+    private volatile PersistentST<Key, Value> current = new PersistentST<Key, Value>();
+
+    // the current version: an immutable table that later writes do not change
+    public PersistentST<Key, Value> snapshot() {
+        return current;
+    }
+
+    // associate val with key (a null val deletes key) and publish the new version
+    public synchronized void put(Key key, Value val) {
+        current = current.put(key, val);
+    }
+
+    // delete key and publish the new version
+    public synchronized void delete(Key key) {
+        current = current.delete(key);
+    }
+
+    // insert the pairs keys[i], vals[i] in order, and publish them as one
+    // version (no reader sees some of them without the others)
+    public synchronized void putAll(Key[] keys, Value[] vals) {
+        if (keys.length != vals.length)
+            throw new IllegalArgumentException("keys and values differ in length: " + keys.length + " != " + vals.length);
+        PersistentST<Key, Value> st = current;
+        for (int i = 0; i < keys.length; i++)
+            st = st.put(keys[i], vals[i]);
+        current = st;
+    }
+
+    public Value get(Key key)         { return current.get(key);      }
+    public boolean contains(Key key)  { return current.contains(key); }
+    public int size()                 { return current.size();        }
+    public boolean isEmpty()          { return current.isEmpty();     }
+    public Key min()                  { return current.min();         }
+    public Key max()                  { return current.max();         }
+    public Key floor(Key key)         { return current.floor(key);    }
+    public Key ceiling(Key key)       { return current.ceiling(key);  }
+    public int rank(Key key)          { return current.rank(key);     }
+    public Key select(int k)          { return current.select(k);     }
+
+    // the keys of the current version, in ascending order
+    public Iterable<Key> keys() {
+        return current.keys();
+    }
+
+    // the keys in [lo, hi] of the current version, in ascending order
+    public Iterable<Key> keys(Key lo, Key hi) {
+        return current.keys(lo, hi);
+    }
+
+    public Iterator<Key> iterator() {
+        return current.iterator();
+    }
+
+
+   /*************************************************************************
+    *  Test client: readers against one writer for the given time.
+    *************************************************************************/
+    public static void main(String[] args) throws InterruptedException {
+        int readers = Integer.parseInt(args[0]);
+        long millis = (long) (Double.parseDouble(args[1]) * 1000);
+        final int n = 1 << 20;
+        final SnapshotST<Integer, Integer> st = new SnapshotST<Integer, Integer>();
+        Integer[] keys = new Integer[n / 2];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = 2*i;
+        st.putAll(keys, keys);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final LongAdder reads = new LongAdder();
+        Thread[] threads = new Thread[readers];
+        for (int t = 0; t < readers; t++) {
+            final long seed = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    long count = 0;
+                    while (!done.get()) {
+                        PersistentST<Integer, Integer> s = st.snapshot();
+                        int key = 1 + random.nextInt(n - 2);
+                        if (s.floor(key) > s.ceiling(key)) throw new IllegalStateException("inconsistent snapshot");
+                        count++;
+                    }
+                    reads.add(count);
+                }
+            });
+            threads[t].start();
+        }
+
+        // the writer flips odd keys in and out, one version per put
+        Random random = new Random(-1);
+        long puts = 0;
+        long end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            int key = 2 * random.nextInt(n / 2) + 1;
+            st.put(key, st.contains(key) ? null : key);
+            puts++;
+        }
+        done.set(true);
+        for (Thread thread : threads)
+            thread.join();
+
+        double seconds = millis / 1000.0;
+        StdOut.printf("%d readers: %.0f reads/sec, writer: %.0f puts/sec\n",
+                      readers, reads.sum() / seconds, puts / seconds);
+    }
+}